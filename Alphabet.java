@@ -1,6 +1,6 @@
 package enigma;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 
 /** An alphabet of encodable characters.  Provides a mapping from characters
  *  to and from indices into the alphabet.
@@ -11,14 +11,20 @@ class Alphabet {
     /** A new alphabet containing CHARS. The K-th character has index
      *  K (numbering from 0). No character may be duplicated. */
     Alphabet(String chars) {
-        for (int i = 0; i < chars.length(); i++) {
-            if (_chars.contains(chars.charAt(i))) {
+        _chars = chars.toCharArray();
+        int maxchar = -1;
+        for (char c : _chars) {
+            maxchar = Math.max(maxchar, c);
+        }
+        _index = new int[maxchar + 1];
+        Arrays.fill(_index, -1);
+        for (int i = 0; i < _chars.length; i++) {
+            if (_index[_chars[i]] != -1) {
                 throw new EnigmaException("No character may be duplicated");
-            } else {
-                _chars.add(chars.charAt(i));
             }
+            _index[_chars[i]] = i;
         }
-        _size = _chars.size();
+        _size = _chars.length;
     }
 
     /** A default alphabet of all upper-case characters. */
@@ -34,29 +40,32 @@ class Alphabet {
 
     /** Returns true if CH is in this alphabet. */
     boolean contains(char ch) {
-        return _chars.contains(ch);
+        return ch < _index.length && _index[ch] != -1;
     }
 
     /** Returns character number INDEX in the alphabet, where
      *  0 <= INDEX < size(). */
     char toChar(int index) {
-        if (index >= size()) {
+        if (index >= size() || index < 0) {
             throw new EnigmaException("index out of bound");
         }
-        return _chars.get(index);
+        return _chars[index];
     }
 
     /** Returns the index of character CH which must be in
      *  the alphabet. This is the inverse of toChar(). */
     int toInt(char ch) {
-        if (!_chars.contains(ch)) {
+        if (!contains(ch)) {
             throw new EnigmaException("character much be in the alphabet");
         }
-        return _chars.indexOf(ch);
+        return _index[ch];
     }
 
-    /** ArrayList containing all the characters in alphabet. */
-    private ArrayList<Character> _chars = new ArrayList<Character>();
+    /** The characters of the alphabet, in index order. */
+    private final char[] _chars;
+    /** Maps each character to its index in _chars, or -1 if absent.  Only
+     *  as long as the largest character in the alphabet. */
+    private final int[] _index;
     /** size variable for the size of the alphabet. */
     private int _size;
 
@@ -0,0 +1,186 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Converts batches of independent sessions, each a settings line and a
+ *  message, concurrently.  Each distinct settings line is parsed and
+ *  compiled once and cached, so repeated settings cost only a cursor;
+ *  the cache is bounded, so a long-running engine forgets settings that
+ *  have not been used for a while.
+ *  A settings line used for many letters also gets a Keystream, kept in
+ *  a cache of bounded size, so that later messages with it cost one
+ *  table lookup per letter.  Since building a keystream costs about as
+ *  much as converting a letter for each entry of its table, one is built
+ *  only once the messages converted with its settings line total that
+ *  many letters, so short messages with rarely repeated settings never
+ *  pay for one.
+ *  Unlike Main, sessions never inherit ring settings or rotor positions
+ *  from one another: a session without ring settings uses ring setting 0
+ *  for every rotor.
+ *  @author Xuanyi Zhang
+ */
+final class BatchEngine {
+
+    /** One settings line and message to convert with it. */
+    static final class Session {
+
+        /** A session converting MESSAGE with SETTINGS, a settings line
+         *  without its leading '*'. */
+        Session(String settings, String message) {
+            _settings = settings;
+            _message = message;
+        }
+
+        /** Return my settings line. */
+        String settings() {
+            return _settings;
+        }
+
+        /** Return my message. */
+        String message() {
+            return _message;
+        }
+
+        /** My settings line. */
+        private final String _settings;
+        /** My message. */
+        private final String _message;
+    }
+
+    /** An engine for the machine configuration of CONFIG (its alphabet,
+     *  slots, pawls and available rotors), running on POOL.  CONFIG
+     *  itself is never modified. */
+    BatchEngine(Machine config, ForkJoinPool pool) {
+        _config = config;
+        _pool = pool;
+    }
+
+    /** An engine for the configuration of CONFIG running on the common
+     *  fork-join pool. */
+    BatchEngine(Machine config) {
+        this(config, ForkJoinPool.commonPool());
+    }
+
+    /** Return the conversions of the messages of SESSIONS, in order, as
+     *  Machine.convert(String) would produce them. */
+    List<String> convert(List<Session> sessions) {
+        Session[] work = sessions.toArray(new Session[0]);
+        String[] results = new String[work.length];
+        if (work.length > 0) {
+            _pool.invoke(new SessionTask(work, results, 0, work.length));
+        }
+        return Arrays.asList(results);
+    }
+
+    /** Return the compiled machine for SETTINGS, compiling and caching it
+     *  if necessary. */
+    CompiledMachine compiled(String settings) {
+        return setting(settings)._machine;
+    }
+
+    /** Return the keystream for SETTINGS, building and caching it if
+     *  necessary, if the letters converted with SETTINGS, counting
+     *  LETTERS more, have reached the cost of building it; otherwise
+     *  return null. */
+    Keystream keystream(String settings, long letters) {
+        Setting setting = setting(settings);
+        CompiledMachine machine = setting._machine;
+        long total = setting._letters.addAndGet(letters);
+        if (total < (long) Keystream.MAX_ROWS * machine.alphabet().size()) {
+            return null;
+        }
+        return _keystreams.get(settings, k -> new Keystream(machine));
+    }
+
+    /** Return the cached record of SETTINGS, compiling it if
+     *  necessary. */
+    private Setting setting(String settings) {
+        return _compiled.get(
+            settings,
+            k -> new Setting(CompiledMachine.compile(_config, k)));
+    }
+
+    /** Return the cache of keystreams, keyed by settings line. */
+    LruCache<String, Keystream> keystreamCache() {
+        return _keystreams;
+    }
+
+    /** Return the number of distinct settings lines in my cache of
+     *  compiled machines. */
+    int cachedSettings() {
+        return _compiled.size();
+    }
+
+    /** A compiled settings line and the number of letters converted
+     *  with it while cached. */
+    private static final class Setting {
+
+        /** The record of MACHINE, with no letters converted. */
+        Setting(CompiledMachine machine) {
+            _machine = machine;
+        }
+
+        /** The compiled settings line. */
+        private final CompiledMachine _machine;
+        /** Number of letters converted with _machine. */
+        private final AtomicLong _letters = new AtomicLong();
+    }
+
+    /** Converts a range of sessions, splitting it among workers. */
+    private class SessionTask extends RecursiveAction {
+
+        /** Converts WORK[LO .. HI-1] into the same positions of RESULTS. */
+        SessionTask(Session[] work, String[] results, int lo, int hi) {
+            _work = work;
+            _results = results;
+            _lo = lo;
+            _hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (_hi - _lo == 1) {
+                Session session = _work[_lo];
+                Keystream keystream = keystream(
+                    session.settings(), session.message().length());
+                if (keystream != null) {
+                    _results[_lo] = keystream.convert(session.message());
+                } else {
+                    _results[_lo] = compiled(session.settings()).cursor()
+                        .convert(session.message());
+                }
+            } else {
+                int mid = (_lo + _hi) / 2;
+                invokeAll(new SessionTask(_work, _results, _lo, mid),
+                          new SessionTask(_work, _results, mid, _hi));
+            }
+        }
+
+        /** All the sessions. */
+        private final Session[] _work;
+        /** Results, in the order of _work. */
+        private final String[] _results;
+        /** The range of sessions handled by this task. */
+        private final int _lo, _hi;
+    }
+
+    /** The machine whose configuration I use. */
+    private final Machine _config;
+    /** The pool that converts sessions. */
+    private final ForkJoinPool _pool;
+    /** Compiled machines, keyed by settings line. */
+    private final LruCache<String, Setting> _compiled =
+        new LruCache<>(COMPILED_CAPACITY, s -> s._machine.footprint());
+    /** Keystreams of recurring settings lines. */
+    private final LruCache<String, Keystream> _keystreams =
+        new LruCache<>(KEYSTREAM_CAPACITY, Keystream::footprint);
+
+    /** Capacity in bytes of the cache of compiled settings. */
+    private static final long COMPILED_CAPACITY = 1 << 26;
+    /** Capacity in bytes of the keystream cache. */
+    private static final long KEYSTREAM_CAPACITY = 1 << 26;
+}
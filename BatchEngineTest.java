@@ -0,0 +1,104 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static enigma.TestUtils.*;
+import static enigma.MachineTest.*;
+import static enigma.CompiledMachineTest.randomMessage;
+
+/** The suite of all JUnit tests for the BatchEngine class.
+ *  @author Xuanyi Zhang
+ */
+public class BatchEngineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Settings lines used by the tests. */
+    private static final String[] SETTINGS = {
+        " B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)",
+        " C Gamma VI I VIII XDYL BQZA (AQ) (MZ) (CE)",
+        " B Beta I II III AAAA",
+    };
+
+    @Test
+    public void testResultsInOrder() {
+        Random random = new Random(61);
+        List<BatchEngine.Session> sessions = new ArrayList<>();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 300; i += 1) {
+            String settings = SETTINGS[random.nextInt(SETTINGS.length)];
+            String msg = randomMessage(random, random.nextInt(200));
+            sessions.add(new BatchEngine.Session(settings, msg));
+            Machine M = navalMachine();
+            Settings parsed = new Settings(settings, M.numRotors());
+            M.insertRotors(parsed.rotors());
+            if (parsed.rings() != null) {
+                M.setRings(parsed.rings());
+            }
+            M.setRotors(parsed.setting());
+            M.setPlugboard(new Permutation(parsed.plugboard(), UPPER));
+            expected.add(M.convert(msg));
+        }
+        BatchEngine engine = new BatchEngine(navalMachine(),
+                                             new ForkJoinPool(4));
+        assertEquals(expected, engine.convert(sessions));
+        assertEquals(SETTINGS.length, engine.cachedSettings());
+        assertEquals(0, engine.keystreamCache().size());
+        assertEquals(expected, engine.convert(sessions));
+    }
+
+    @Test
+    public void testKeystreamForLongUse() {
+        Random random = new Random(61);
+        String msg = randomMessage(random, 100000);
+        Machine M = navalMachine();
+        M.insertRotors(new String[] { "B", "Beta", "I", "II", "III" });
+        M.setRotors("AAAA");
+        M.setPlugboard(new Permutation("", UPPER));
+        String expected = M.convert(msg);
+        List<BatchEngine.Session> sessions = new ArrayList<>();
+        for (int i = 0; i < 12; i += 1) {
+            sessions.add(new BatchEngine.Session(SETTINGS[2], msg));
+        }
+        BatchEngine engine = new BatchEngine(navalMachine(),
+                                             new ForkJoinPool(4));
+        for (String result : engine.convert(sessions)) {
+            assertEquals(expected, result);
+        }
+        assertEquals(1, engine.keystreamCache().size());
+        for (String result : engine.convert(sessions)) {
+            assertEquals(expected, result);
+        }
+        assertEquals(1, engine.keystreamCache().misses());
+    }
+
+    @Test
+    public void testSessionsDoNotShareRings() {
+        Machine config = navalMachine();
+        BatchEngine engine = new BatchEngine(config);
+        List<BatchEngine.Session> sessions = new ArrayList<>();
+        sessions.add(new BatchEngine.Session(
+            " C Gamma VI I II XDYL BQZA", "HELLO"));
+        sessions.add(new BatchEngine.Session(" C Gamma VI I II XDYL",
+                                             "HELLO"));
+        List<String> results = engine.convert(sessions);
+        Machine M = navalMachine();
+        M.insertRotors(new String[] { "C", "Gamma", "VI", "I", "II" });
+        M.setRotors("XDYL");
+        M.setPlugboard(new Permutation("", UPPER));
+        assertEquals(M.convert("HELLO"), results.get(1));
+        for (Rotor r : config.allRotors()) {
+            assertEquals(0, r.rsetting());
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package enigma;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+import static enigma.EnigmaException.*;
+
+/** Reads and writes machine configurations in a precompiled binary form,
+ *  so that they can be loaded without parsing any cycle notation.  All
+ *  values are big-endian.  The file holds, in order:
+ *  <ul>
+ *  <li> the int MAGIC and the int VERSION;
+ *  <li> the alphabet size N, followed by N chars;
+ *  <li> the number of rotor slots, of pawls and of rotors, as ints;
+ *  <li> for each rotor: the length of its UTF-8 name and the name's
+ *       bytes, its type ('M', 'N' or 'R') as a byte, its notches as
+ *       (N + 63) / 64 longs of bits (bit K of word K / 64 set iff
+ *       setting K is a notch), then N ints of its forward wiring and N
+ *       ints of its inverse wiring.
+ *  </ul>
+ *  @author Xuanyi Zhang
+ */
+final class BinaryConfig {
+
+    /** Not instantiable. */
+    private BinaryConfig() {
+    }
+
+    /** Return true iff the file at PATH starts with MAGIC. */
+    static boolean isBinary(Path path) {
+        try (FileChannel in = FileChannel.open(path)) {
+            ByteBuffer start = ByteBuffer.allocate(4);
+            while (start.hasRemaining() && in.read(start) >= 0) {
+                continue;
+            }
+            return !start.hasRemaining() && start.getInt(0) == MAGIC;
+        } catch (IOException excp) {
+            throw error("could not open %s", path);
+        }
+    }
+
+    /** Write the configuration of MACHINE (its alphabet, slots, pawls and
+     *  available rotors) to PATH. */
+    static void write(Machine machine, Path path) {
+        Alphabet alphabet = machine.alphabet();
+        int size = alphabet.size();
+        try (DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(size);
+            for (int k = 0; k < size; k++) {
+                out.writeChar(alphabet.toChar(k));
+            }
+            out.writeInt(machine.numRotors());
+            out.writeInt(machine.numPawls());
+            out.writeInt(machine.allRotors().size());
+            for (Rotor r : machine.allRotors()) {
+                byte[] name = r.name().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(name.length);
+                out.write(name);
+                out.writeByte(r.reflecting() ? 'R' : r.rotates() ? 'M' : 'N');
+                long[] notches = new long[(size + 63) / 64];
+                for (int k = 0; k < size; k++) {
+                    if (r.notchAt(k)) {
+                        notches[k / 64] |= 1L << (k % 64);
+                    }
+                }
+                for (long word : notches) {
+                    out.writeLong(word);
+                }
+                for (int k = 0; k < size; k++) {
+                    out.writeInt(r.permutation().permute(k));
+                }
+                for (int k = 0; k < size; k++) {
+                    out.writeInt(r.permutation().invert(k));
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not write %s", path);
+        }
+    }
+
+    /** Return a machine with the configuration stored at PATH, which is
+     *  memory-mapped rather than read. */
+    static Machine read(Path path) {
+        try (FileChannel in = FileChannel.open(path)) {
+            return read(in.map(FileChannel.MapMode.READ_ONLY, 0, in.size()));
+        } catch (IOException excp) {
+            throw error("could not open %s", path);
+        }
+    }
+
+    /** Return a machine with the configuration stored in DATA. */
+    static Machine read(ByteBuffer data) {
+        try {
+            if (data.getInt() != MAGIC) {
+                throw error("not a compiled configuration");
+            }
+            if (data.getInt() != VERSION) {
+                throw error("unsupported compiled configuration version");
+            }
+            char[] chars = new char[length(data, 2)];
+            data.asCharBuffer().get(chars);
+            data.position(data.position() + 2 * chars.length);
+            Alphabet alphabet = new Alphabet(new String(chars));
+            int numrotors = data.getInt();
+            int numpawls = data.getInt();
+            int count = length(data, 4 + 1 + 8 * ((chars.length + 63) / 64)
+                               + 8L * chars.length);
+            ArrayList<Rotor> allrotors = new ArrayList<>(count);
+            int[] forward = new int[chars.length];
+            int[] inverse = new int[chars.length];
+            long[] notches = new long[(chars.length + 63) / 64];
+            for (int i = 0; i < count; i++) {
+                byte[] name = new byte[length(data, 1)];
+                data.get(name);
+                byte type = data.get();
+                data.asLongBuffer().get(notches);
+                data.position(data.position() + 8 * notches.length);
+                data.asIntBuffer().get(forward).get(inverse);
+                data.position(data.position() + 8 * chars.length);
+                allrotors.add(rotor(new String(name, StandardCharsets.UTF_8),
+                                    type, notches,
+                                    new Permutation(forward, inverse,
+                                                    alphabet)));
+            }
+            return new Machine(alphabet, numrotors, numpawls, allrotors);
+        } catch (BufferUnderflowException | IllegalArgumentException
+                 | NegativeArraySizeException excp) {
+            throw error("compiled configuration truncated or corrupt");
+        }
+    }
+
+    /** Read a count from DATA of items that take at least UNIT bytes
+     *  each, and return it, checking that that many could follow, so that
+     *  a corrupt count cannot make a huge allocation. */
+    private static int length(ByteBuffer data, long unit) {
+        int n = data.getInt();
+        if (n < 0 || n * unit > data.remaining()) {
+            throw error("compiled configuration truncated or corrupt");
+        }
+        return n;
+    }
+
+    /** Return a rotor named NAME of type TYPE with permutation PERM and
+     *  notches NOTCHES, laid out as in the file. */
+    private static Rotor rotor(String name, byte type, long[] notches,
+                               Permutation perm) {
+        switch (type) {
+        case 'M':
+            StringBuilder notchchars = new StringBuilder();
+            for (int k = 0; k < perm.size(); k++) {
+                if ((notches[k / 64] & (1L << (k % 64))) != 0) {
+                    notchchars.append(perm.alphabet().toChar(k));
+                }
+            }
+            return new MovingRotor(name, perm, notchchars.toString());
+        case 'N':
+            return new FixedRotor(name, perm);
+        case 'R':
+            return new Reflector(name, perm);
+        default:
+            throw error("bad rotor type in compiled configuration");
+        }
+    }
+
+    /** Identifies compiled configuration files ("\x89ENG").  The first
+     *  byte cannot start a line of UTF-8 text, so no text configuration
+     *  is mistaken for a compiled one. */
+    static final int MAGIC = 0x89454E47;
+    /** The version of the format written by write. */
+    static final int VERSION = 1;
+}
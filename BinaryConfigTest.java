@@ -0,0 +1,83 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static enigma.MachineTest.*;
+
+/** The suite of all JUnit tests for the BinaryConfig class.
+ *  @author Xuanyi Zhang
+ */
+public class BinaryConfigTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        Path path = Files.createTempFile("enigma", ".bin");
+        try {
+            BinaryConfig.write(navalMachine(), path);
+            assertTrue(BinaryConfig.isBinary(path));
+            Machine loaded = BinaryConfig.read(path);
+            assertEquals(5, loaded.numRotors());
+            assertEquals(3, loaded.numPawls());
+            assertEquals(navalMachine().allRotors().size(),
+                         loaded.allRotors().size());
+            sampleSettings(loaded);
+            assertEquals("QVPQSOKOILPUBKJZPISFXDW",
+                         loaded.convert("FROMHISSHOULDERHIAWATHA"));
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testTruncated() throws IOException {
+        Path path = Files.createTempFile("enigma", ".bin");
+        try {
+            BinaryConfig.write(navalMachine(), path);
+            byte[] data = Files.readAllBytes(path);
+            Files.write(path, Arrays.copyOf(data, data.length / 2));
+            BinaryConfig.read(path);
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void testTextConfigStartingWithMagicName() throws IOException {
+        Path path = Files.createTempFile("enigma", ".conf");
+        try {
+            Files.writeString(path, "ENIGMABCDFHJKLOPQRSTUVWXYZ\n5 3\n"
+                              + " I MQ (AELTPHQXRU) (BKNW) (CMOY) (DFG) "
+                              + "(IV) (JZ) (S)\n");
+            assertFalse(BinaryConfig.isBinary(path));
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testCorruptCount() throws IOException {
+        Path path = Files.createTempFile("enigma", ".bin");
+        try {
+            BinaryConfig.write(navalMachine(), path);
+            byte[] data = Files.readAllBytes(path);
+            int countAt = 8 + 4 + 2 * 26 + 8;
+            data[countAt] = 0x7f;
+            Files.write(path, data);
+            BinaryConfig.read(path);
+        } finally {
+            Files.delete(path);
+        }
+    }
+}
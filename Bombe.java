@@ -0,0 +1,340 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import static enigma.EnigmaException.*;
+
+/** A known-plaintext key search with an unknown plugboard, after the
+ *  Turing-Welchman Bombe.  The crib and the ciphertext beneath it form a
+ *  menu: a graph whose vertices are letters, with an edge between crib
+ *  letter P and cipher letter C for each position K where P is
+ *  enciphered to C.  If the plugboard maps P to X, the rotors (without
+ *  the plugboard) must map X at position K to the plugboard partner of C.
+ *
+ *  For each rotor order and starting position, a hypothesis that one
+ *  letter of the menu is plugged to some X is propagated along the edges
+ *  until nothing more follows.  What is known is a bitset per letter of
+ *  the partners it may have, and the "diagonal board" adds that if A is
+ *  plugged to X, X is plugged to A.  If every letter is left with at most
+ *  one partner, the hypothesis is consistent and the position is a stop;
+ *  otherwise every partner the closure reached for the tested letter is
+ *  ruled out at once, as on the real machine.
+ *
+ *  As on the Bombe, all ring settings are taken as 0, so a stop gives the
+ *  rotors' core positions, and a rotor that turns over within the crib
+ *  other than the rightmost can hide the key; searching several cribs or
+ *  offsets covers that.  Rotor orders and leftmost positions are searched
+ *  in parallel on a ForkJoinPool.  Spaces are ignored; offsets count
+ *  letters.
+ *  @author Xuanyi Zhang
+ */
+final class Bombe {
+
+    /** A Bombe over the configuration of CONFIG (its alphabet, slots,
+     *  pawls and available rotors) running on POOL.  Initially every
+     *  rotor order is tried.  CONFIG itself is never modified. */
+    Bombe(Machine config, ForkJoinPool pool) {
+        if (config.alphabet().size() > Long.SIZE) {
+            throw error("alphabet too large for bombe");
+        }
+        _config = config;
+        _pool = pool;
+        _orders = CribSearch.rotorOrders(config);
+    }
+
+    /** A Bombe over CONFIG on the common fork-join pool. */
+    Bombe(Machine config) {
+        this(config, ForkJoinPool.commonPool());
+    }
+
+    /** Try only the rotor orders ORDERS, each naming a rotor for every
+     *  slot, the reflector first. */
+    void setOrders(List<String[]> orders) {
+        for (String[] order : orders) {
+            _config.selectRotors(order);
+        }
+        _orders = new ArrayList<>(orders);
+    }
+
+    /** Return the stops for CRIB lying at letter OFFSET of CIPHERTEXT, as
+     *  settings lines whose plugboard holds the pairs the menu implies.
+     *  The result counts each rotor order and starting position as one
+     *  candidate. */
+    CribSearch.Result search(String ciphertext, String crib, int offset) {
+        long start = System.nanoTime();
+        if (!CribSearch.placeable(ciphertext, crib, offset)) {
+            return new CribSearch.Result(List.of(), 0,
+                                         System.nanoTime() - start);
+        }
+        int[] text = indices(ciphertext.replace(" ", ""));
+        int[] plain = indices(crib.replace(" ", ""));
+        Menu menu = new Menu(plain, Arrays.copyOfRange(
+            text, offset, offset + plain.length), size());
+        Queue<String> stops = new ConcurrentLinkedQueue<>();
+        long units = (long) _orders.size() * size();
+        long candidates = units == 0 ? 0 : _pool.invoke(
+            new SearchTask(menu, offset, stops, 0, units));
+        List<String> sorted = new ArrayList<>(stops);
+        Collections.sort(sorted);
+        return new CribSearch.Result(sorted, candidates,
+                                     System.nanoTime() - start);
+    }
+
+    /** The letter graph of a crib and the ciphertext beneath it. */
+    private static final class Menu {
+
+        /** The menu pairing PLAIN[K] with CIPHER[K] at each position K,
+         *  over an alphabet of SIZE letters. */
+        Menu(int[] plain, int[] cipher, int size) {
+            _length = plain.length;
+            int[] degree = new int[size];
+            for (int k = 0; k < _length; k++) {
+                degree[plain[k]] += 1;
+                degree[cipher[k]] += 1;
+            }
+            _other = new int[size][];
+            _position = new int[size][];
+            int center = 0;
+            for (int a = 0; a < size; a++) {
+                _other[a] = new int[degree[a]];
+                _position[a] = new int[degree[a]];
+                if (degree[a] > degree[center]) {
+                    center = a;
+                }
+            }
+            _center = center;
+            Arrays.fill(degree, 0);
+            for (int k = 0; k < _length; k++) {
+                add(plain[k], cipher[k], k, degree);
+                add(cipher[k], plain[k], k, degree);
+            }
+        }
+
+        /** Record the edge from A to B at position K, where DEGREE counts
+         *  the edges of each letter recorded so far. */
+        private void add(int a, int b, int k, int[] degree) {
+            _other[a][degree[a]] = b;
+            _position[a][degree[a]] = k;
+            degree[a] += 1;
+        }
+
+        /** Number of positions in the menu. */
+        private final int _length;
+        /** _other[A][E] is the letter at the far end of A's Eth edge. */
+        private final int[][] _other;
+        /** _position[A][E] is the crib position of A's Eth edge. */
+        private final int[][] _position;
+        /** The letter with the most edges, whose partner is tested. */
+        private final int _center;
+    }
+
+    /** Searches a range of work units.  Unit U is rotor order U / N with
+     *  leftmost rotor position U % N, where N is the alphabet size. */
+    private class SearchTask extends RecursiveTask<Long> {
+
+        /** Searches units LO .. HI-1 for stops of MENU, lying at letter
+         *  OFFSET of the ciphertext, adding them to STOPS. */
+        SearchTask(Menu menu, int offset, Queue<String> stops,
+                   long lo, long hi) {
+            _menu = menu;
+            _offset = offset;
+            _stops = stops;
+            _lo = lo;
+            _hi = hi;
+        }
+
+        @Override
+        protected Long compute() {
+            if (_hi - _lo > 1) {
+                long mid = (_lo + _hi) / 2;
+                SearchTask left =
+                    new SearchTask(_menu, _offset, _stops, _lo, mid);
+                left.fork();
+                long right = new SearchTask(_menu, _offset, _stops, mid,
+                                            _hi).compute();
+                return left.join() + right;
+            }
+            int size = size();
+            String[] order = _orders.get((int) (_lo / size));
+            Machine machine = _config.copyConfiguration();
+            machine.insertRotors(order);
+            CompiledMachine.Cursor cursor =
+                new CompiledMachine(machine).cursor();
+            int[] positions = new int[_config.numRotors()];
+            positions[1] = (int) (_lo % size);
+            _core = new int[_menu._length * size];
+            _live = new long[size];
+            _queue = new int[size * size];
+            long candidates = 0;
+            do {
+                candidates += 1;
+                tabulate(cursor, positions);
+                test(order, positions);
+            } while (CribSearch.next(positions, size));
+            return candidates;
+        }
+
+        /** Fill _core with the substitutions of CURSOR's rotors at each
+         *  position of the menu, starting from POSITIONS. */
+        private void tabulate(CompiledMachine.Cursor cursor,
+                              int[] positions) {
+            int size = size();
+            for (int slot = 1; slot < positions.length; slot++) {
+                cursor.set(slot, positions[slot]);
+            }
+            cursor.skip(_offset);
+            for (int k = 0; k < _menu._length; k++) {
+                cursor.step();
+                for (int c = 0; c < size; c++) {
+                    _core[k * size + c] = cursor.substitute(c);
+                }
+            }
+        }
+
+        /** Test every partner of the menu's center against _core, adding
+         *  a stop for rotors ORDER at POSITIONS for each consistent
+         *  one. */
+        private void test(String[] order, int[] positions) {
+            int size = size();
+            int center = _menu._center;
+            long full = size == Long.SIZE ? -1L : (1L << size) - 1;
+            long ruledOut = 0;
+            for (int x = 0; x < size; x++) {
+                if ((ruledOut & (1L << x)) != 0) {
+                    continue;
+                }
+                Arrays.fill(_live, 0);
+                close(center, x, full);
+                ruledOut |= _live[center];
+                if (consistent()) {
+                    _stops.add(key(order, positions));
+                }
+                if (ruledOut == full) {
+                    return;
+                }
+            }
+        }
+
+        /** Light that A may be plugged to X in _live, and everything that
+         *  follows from it, stopping early once the center of the menu
+         *  has every partner in FULL lit. */
+        private void close(int a, int x, long full) {
+            int size = size();
+            int center = _menu._center;
+            int[][] other = _menu._other, position = _menu._position;
+            int[] core = _core, queue = _queue;
+            int head = 0;
+            _tail = 0;
+            light(a, x);
+            while (head < _tail && _live[center] != full) {
+                int entry = queue[head++];
+                int from = entry / size, to = entry % size;
+                int[] ends = other[from], ks = position[from];
+                for (int e = 0; e < ends.length; e++) {
+                    light(ends[e], core[ks[e] * size + to]);
+                }
+            }
+        }
+
+        /** Light that A may be plugged to X, and by the diagonal board
+         *  that X may be plugged to A, queueing whichever is new. */
+        private void light(int a, int x) {
+            long bit = 1L << x;
+            if ((_live[a] & bit) == 0) {
+                _live[a] |= bit;
+                _queue[_tail++] = a * size() + x;
+            }
+            bit = 1L << a;
+            if ((_live[x] & bit) == 0) {
+                _live[x] |= bit;
+                _queue[_tail++] = x * size() + a;
+            }
+        }
+
+        /** Return true iff every letter has at most one partner lit. */
+        private boolean consistent() {
+            for (long row : _live) {
+                if (Long.bitCount(row) > 1) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /** Return the settings line of the stop with rotors ORDER at
+         *  POSITIONS, with the pairs lit in _live as its plugboard. */
+        private String key(String[] order, int[] positions) {
+            Alphabet alpha = _config.alphabet();
+            StringBuilder key = new StringBuilder(String.join(" ", order));
+            key.append(' ');
+            for (int slot = 1; slot < positions.length; slot++) {
+                key.append(alpha.toChar(positions[slot]));
+            }
+            key.append(' ');
+            for (int slot = 1; slot < positions.length; slot++) {
+                key.append(alpha.toChar(0));
+            }
+            Plugboard plugboard = new Plugboard(alpha);
+            for (int a = 0; a < _live.length; a++) {
+                int x = Long.numberOfTrailingZeros(_live[a]);
+                if (x < a) {
+                    plugboard.swap(x, a);
+                }
+            }
+            if (plugboard.pairs() > 0) {
+                key.append(' ').append(plugboard);
+            }
+            return key.toString();
+        }
+
+        /** The menu tested. */
+        private final Menu _menu;
+        /** Position of the crib in the ciphertext. */
+        private final int _offset;
+        /** Stops found. */
+        private final Queue<String> _stops;
+        /** The range of units searched. */
+        private final long _lo, _hi;
+        /** Entry K * size + C is the substitution of C by the rotors at
+         *  menu position K. */
+        private int[] _core;
+        /** Bit X of _live[A] is set iff A may be plugged to X. */
+        private long[] _live;
+        /** Lit entries A * size + X whose consequences are pending. */
+        private int[] _queue;
+        /** Number of entries ever added to _queue in this closure. */
+        private int _tail;
+    }
+
+    /** Return the size of my alphabet. */
+    private int size() {
+        return _config.alphabet().size();
+    }
+
+    /** Return the alphabet indices of the characters of TEXT. */
+    private int[] indices(String text) {
+        Alphabet alpha = _config.alphabet();
+        int[] result = new int[text.length()];
+        for (int i = 0; i < result.length; i++) {
+            if (!alpha.contains(text.charAt(i))) {
+                throw new EnigmaException("bad message");
+            }
+            result[i] = alpha.toInt(text.charAt(i));
+        }
+        return result;
+    }
+
+    /** The machine whose configuration I use. */
+    private final Machine _config;
+    /** The pool that runs searches. */
+    private final ForkJoinPool _pool;
+    /** Rotor orders searched. */
+    private List<String[]> _orders;
+}
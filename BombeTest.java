@@ -0,0 +1,89 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import static enigma.TestUtils.*;
+import static enigma.MachineTest.*;
+
+/** The suite of all JUnit tests for the Bombe class.
+ *  @author Xuanyi Zhang
+ */
+public class BombeTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    @Test
+    public void testFindsKeyAndPlugs() {
+        Machine M = smallMachine(4);
+        M.insertRotors(new String[] { "B", "III", "I", "II" });
+        M.setRings("AAA");
+        M.setRotors("KWC");
+        M.setPlugboard(new Permutation("(AQ) (EZ) (RS) (TV) (HM)", UPPER));
+        String crib = "WETTERVORHERSAGEBISKAYA";
+        String ciphertext = M.convert("XY" + crib + "ZZ");
+
+        Bombe bombe = new Bombe(smallMachine(4));
+        bombe.setOrders(List.<String[]>of(
+            new String[] { "B", "I", "II", "III" },
+            new String[] { "B", "III", "I", "II" }));
+        CribSearch.Result result = bombe.search(ciphertext, crib, 2);
+        assertEquals(2 * 26 * 26 * 26, result.candidates());
+        String found = null;
+        for (String key : result.keys()) {
+            if (key.startsWith("B III I II KWC AAA ")) {
+                found = key;
+            }
+        }
+        assertTrue(result.keys().toString(), found != null);
+        for (String pair : new String[] { "(AQ)", "(EZ)", "(RS)", "(TV)" }) {
+            assertTrue(found, found.contains(pair));
+        }
+        assertTrue(result.keys().size() < 100);
+    }
+
+    @Test
+    public void testUnplaceableCrib() {
+        Bombe bombe = new Bombe(smallMachine(4));
+        bombe.setOrders(List.<String[]>of(
+            new String[] { "B", "I", "II", "III" }));
+        CribSearch.Result result = bombe.search("ABCD", "XBYZ", 0);
+        assertTrue(result.keys().isEmpty());
+        assertEquals(0, result.candidates());
+    }
+
+    @Test
+    public void testFixedRotor() {
+        Machine M = new Machine(UPPER, 4, 2, navalMachine().allRotors());
+        M.insertRotors(new String[] { "B", "Beta", "IV", "I" });
+        M.setRings("AAA");
+        M.setRotors("XLE");
+        M.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)", UPPER));
+        String crib = "FROMHISSHOULDERHIAWATHA";
+        String ciphertext = M.convert(crib);
+
+        Bombe bombe =
+            new Bombe(new Machine(UPPER, 4, 2, navalMachine().allRotors()));
+        bombe.setOrders(List.<String[]>of(
+            new String[] { "B", "Beta", "IV", "I" },
+            new String[] { "C", "Gamma", "I", "IV" }));
+        CribSearch.Result result = bombe.search(ciphertext, crib, 0);
+        assertEquals(2 * 26 * 26 * 26, result.candidates());
+        String found = null;
+        for (String key : result.keys()) {
+            if (key.startsWith("B Beta IV I XLE AAA ")) {
+                found = key;
+            }
+        }
+        assertTrue(result.keys().toString(), found != null);
+        for (String pair : new String[] { "(EX)", "(HQ)", "(IP)", "(RT)" }) {
+            assertTrue(found, found.contains(pair));
+        }
+    }
+}
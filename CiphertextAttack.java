@@ -0,0 +1,569 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+import static enigma.EnigmaException.*;
+
+/** A ciphertext-only key search, after Gillogly.  It works in stages,
+ *  each keeping the key found by the one before:
+ *
+ *  1. Every rotor order and starting position is tried with all ring
+ *     settings 0 and no plugboard, and the candidates whose decryptions
+ *     have the highest index of coincidence are kept.  Rotor orders are
+ *     searched in parallel.
+ *  2. For each candidate, the rings of the two rightmost rotors are
+ *     hill-climbed on the index of coincidence, turning each rotor's
+ *     starting position with its ring so that only the turnover point
+ *     moves.
+ *  3. The plugboard is hill-climbed one pair at a time, scoring each trial
+ *     decryption with an NgramModel.
+ *  4. The rings of the two rightmost rotors are climbed again on the
+ *     n-gram score, and stage 3 repeats, until neither helps.
+ *
+ *  During the plugboard climb the rotors do not change, so their
+ *  substitutions are tabulated once as a RotorCore, and the plugboard is
+ *  a Plugboard rewired in place.  A trial swap then costs three table
+ *  lookups per letter to find which plaintext letters change, and only
+ *  the n-grams covering those letters are rescored.
+ *  Nothing is allocated per trial.  Candidates are climbed in parallel.
+ *  Spaces in the ciphertext are copied to the plaintext.
+ *  @author Xuanyi Zhang
+ */
+final class CiphertextAttack {
+
+    /** The outcome of an attack. */
+    static final class Result {
+
+        /** The result for key KEY (a settings line without '*'), giving
+         *  PLAINTEXT with n-gram score SCORE, after DECRYPTIONS trial
+         *  decryptions in NANOS nanoseconds. */
+        Result(String key, String plaintext, double score,
+               long decryptions, long nanos) {
+            _key = key;
+            _plaintext = plaintext;
+            _score = score;
+            _decryptions = decryptions;
+            _nanos = nanos;
+        }
+
+        /** Return the settings line, with ring settings, of the best key
+         *  found. */
+        String key() {
+            return _key;
+        }
+
+        /** Return the decryption under key(). */
+        String plaintext() {
+            return _plaintext;
+        }
+
+        /** Return the n-gram log probability of plaintext(). */
+        double score() {
+            return _score;
+        }
+
+        /** Return the number of trial decryptions made. */
+        long decryptions() {
+            return _decryptions;
+        }
+
+        /** Return the time taken in seconds. */
+        double seconds() {
+            return _nanos * 1e-9;
+        }
+
+        /** Return the number of trial decryptions per second. */
+        double decryptionsPerSecond() {
+            return _decryptions / Math.max(seconds(), 1e-9);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s (score %.1f) after %d decryptions in "
+                                 + "%.3f s (%.0f/s)", _key, _score,
+                                 _decryptions, seconds(),
+                                 decryptionsPerSecond());
+        }
+
+        /** Best key. */
+        private final String _key;
+        /** Its decryption. */
+        private final String _plaintext;
+        /** Its score. */
+        private final double _score;
+        /** Trial decryptions made. */
+        private final long _decryptions;
+        /** Time taken. */
+        private final long _nanos;
+    }
+
+    /** An attack on messages from the configuration of CONFIG (its
+     *  alphabet, slots, pawls and available rotors), scoring plugboards
+     *  with MODEL and running on POOL.  Initially every rotor order is
+     *  tried.  CONFIG itself is never modified. */
+    CiphertextAttack(Machine config, NgramModel model, ForkJoinPool pool) {
+        _config = config;
+        _model = model;
+        _pool = pool;
+        _orders = CribSearch.rotorOrders(config);
+    }
+
+    /** An attack on CONFIG scored by MODEL on the common fork-join
+     *  pool. */
+    CiphertextAttack(Machine config, NgramModel model) {
+        this(config, model, ForkJoinPool.commonPool());
+    }
+
+    /** Try only the rotor orders ORDERS, each naming a rotor for every
+     *  slot, the reflector first. */
+    void setOrders(List<String[]> orders) {
+        for (String[] order : orders) {
+            _config.selectRotors(order);
+        }
+        _orders = new ArrayList<>(orders);
+    }
+
+    /** Keep the best COUNT candidates of the first stage. */
+    void setCandidates(int count) {
+        if (count < 1) {
+            throw error("need at least one candidate");
+        }
+        _candidates = count;
+    }
+
+    /** Allow at most PAIRS plugboard pairs. */
+    void setMaxPlugs(int pairs) {
+        _maxPlugs = pairs;
+    }
+
+    /** Return the most probable key for CIPHERTEXT and its decryption. */
+    Result attack(String ciphertext) {
+        long start = System.nanoTime();
+        Alphabet alpha = _config.alphabet();
+        String letters = ciphertext.replace(" ", "");
+        int[] text = new int[letters.length()];
+        for (int i = 0; i < text.length; i++) {
+            if (!alpha.contains(letters.charAt(i))) {
+                throw new EnigmaException("bad message");
+            }
+            text[i] = alpha.toInt(letters.charAt(i));
+        }
+        if (text.length < _model.order() || _orders.isEmpty()) {
+            throw error("nothing to attack");
+        }
+        int size = alpha.size();
+        Ranking ranking = _pool.invoke(
+            new RankTask(text, 0, (long) _orders.size() * size));
+        List<ClimbTask> climbs = new ArrayList<>();
+        for (int k = 0; k < ranking._count; k++) {
+            climbs.add(new ClimbTask(text, ranking._orders[k],
+                                     ranking._positions[k]));
+        }
+        ForkJoinTask.invokeAll(climbs);
+        long decryptions = ranking._decryptions;
+        ClimbTask best = null;
+        for (ClimbTask climb : climbs) {
+            decryptions += climb._decryptions;
+            if (best == null || climb._score > best._score) {
+                best = climb;
+            }
+        }
+        StringBuilder plaintext = new StringBuilder();
+        for (int i = 0, t = 0; i < ciphertext.length(); i++) {
+            plaintext.append(ciphertext.charAt(i) == ' '
+                             ? ' ' : alpha.toChar(best._plain[t++]));
+        }
+        return new Result(best.key(), plaintext.toString(), best._score,
+                          decryptions, System.nanoTime() - start);
+    }
+
+    /** The best candidates found by part of the first stage. */
+    private class Ranking {
+
+        /** Offer the candidate with rotor order ORDER and positions
+         *  POSITIONS, whose score is SCORE.  POSITIONS is copied if the
+         *  candidate is kept. */
+        void offer(long score, int order, int[] positions) {
+            if (_count == _candidates && score <= _scores[_count - 1]) {
+                return;
+            }
+            int k = Math.min(_count, _candidates - 1);
+            while (k > 0 && _scores[k - 1] < score) {
+                _scores[k] = _scores[k - 1];
+                _orders[k] = _orders[k - 1];
+                _positions[k] = _positions[k - 1];
+                k -= 1;
+            }
+            _scores[k] = score;
+            _orders[k] = order;
+            _positions[k] = positions.clone();
+            _count = Math.min(_count + 1, _candidates);
+        }
+
+        /** Add the candidates and decryptions of OTHER to mine. */
+        void merge(Ranking other) {
+            for (int k = 0; k < other._count; k++) {
+                offer(other._scores[k], other._orders[k],
+                      other._positions[k]);
+            }
+            _decryptions += other._decryptions;
+        }
+
+        /** Scores of the candidates, best first. */
+        private final long[] _scores = new long[_candidates];
+        /** Rotor orders of the candidates, as indices into _orders. */
+        private final int[] _orders = new int[_candidates];
+        /** Starting positions of the candidates, indexed by slot. */
+        private final int[][] _positions = new int[_candidates][];
+        /** Number of candidates held. */
+        private int _count;
+        /** Number of decryptions made. */
+        private long _decryptions;
+    }
+
+    /** Ranks a range of work units of the first stage.  Unit U is rotor
+     *  order U / N with leftmost rotor position U % N, where N is the
+     *  alphabet size. */
+    private class RankTask extends RecursiveTask<Ranking> {
+
+        /** Ranks units LO .. HI-1 for decrypting TEXT. */
+        RankTask(int[] text, long lo, long hi) {
+            _text = text;
+            _lo = lo;
+            _hi = hi;
+        }
+
+        @Override
+        protected Ranking compute() {
+            if (_hi - _lo > 1) {
+                long mid = (_lo + _hi) / 2;
+                RankTask left = new RankTask(_text, _lo, mid);
+                left.fork();
+                Ranking result = new RankTask(_text, mid, _hi).compute();
+                result.merge(left.join());
+                return result;
+            }
+            int size = _config.alphabet().size();
+            int order = (int) (_lo / size);
+            CompiledMachine.Cursor cursor = machine(
+                _orders.get(order), new int[_config.numRotors()]).cursor();
+            int[] positions = new int[_config.numRotors()];
+            positions[1] = (int) (_lo % size);
+            int[] counts = new int[size];
+            Ranking ranking = new Ranking();
+            do {
+                ranking.offer(coincidences(cursor, positions, _text, counts),
+                              order, positions);
+                ranking._decryptions += 1;
+            } while (CribSearch.next(positions, size));
+            return ranking;
+        }
+
+        /** The ciphertext. */
+        private final int[] _text;
+        /** The range of units ranked. */
+        private final long _lo, _hi;
+    }
+
+    /** Climbs the rings and plugboard of one candidate. */
+    private class ClimbTask extends RecursiveTask<Void> {
+
+        /** Climbs from rotor order ORDER (an index into _orders) at
+         *  POSITIONS for decrypting TEXT. */
+        ClimbTask(int[] text, int order, int[] positions) {
+            _text = text;
+            _order = _orders.get(order);
+            _positions = positions.clone();
+            _rings = new int[positions.length];
+            _plug = new Plugboard(_config.alphabet());
+        }
+
+        @Override
+        protected Void compute() {
+            climbRings();
+            buildCore();
+            climbPlugboard();
+            while (climbSettings()) {
+                buildCore();
+                climbPlugboard();
+            }
+            return null;
+        }
+
+        /** Hill-climb the rings of the two rightmost rotors on the index
+         *  of coincidence, turning their positions with them. */
+        private void climbRings() {
+            int size = _plug.size();
+            int[] counts = new int[size];
+            long best = coincidences(machine(_order, _rings).cursor(),
+                                     _positions, _text, counts);
+            int last = _positions.length - 1;
+            for (int slot = last; slot >= Math.max(1, last - 1); slot--) {
+                int bestRing = 0;
+                for (int ring = 1; ring < size; ring++) {
+                    _rings[slot] = ring;
+                    int[] turned = _positions.clone();
+                    turned[slot] = (turned[slot] + ring) % size;
+                    long score = coincidences(
+                        machine(_order, _rings).cursor(), turned, _text,
+                        counts);
+                    _decryptions += 1;
+                    if (score > best) {
+                        best = score;
+                        bestRing = ring;
+                    }
+                }
+                _rings[slot] = bestRing;
+                _positions[slot] = (_positions[slot] + bestRing) % size;
+            }
+        }
+
+        /** Hill-climb the rings of the two rightmost rotors on my n-gram
+         *  model, keeping my plugboard, and return true iff my settings
+         *  changed.  Each rotor's position turns with its ring, and the
+         *  rotor to its left may move one letter either way, since the
+         *  index of coincidence often leaves a turnover a few letters out
+         *  and the next rotor one step off, which the plugboard climb
+         *  cannot repair. */
+        private boolean climbSettings() {
+            int size = _plug.size();
+            int len = _text.length;
+            int[] text = _text, trial = _trial;
+            Plugboard plug = _plug;
+            int[] positions = _positions.clone();
+            boolean improved = false;
+            int last = _positions.length - 1;
+            for (int slot = last; slot >= Math.max(1, last - 1); slot--) {
+                int ring0 = _rings[slot], bestRing = ring0;
+                int[] best = _positions.clone();
+                for (int ring = 0; ring < size; ring++) {
+                    _rings[slot] = ring;
+                    CompiledMachine.Cursor cursor =
+                        machine(_order, _rings).cursor();
+                    for (int d = -1; d <= 1; d++) {
+                        System.arraycopy(_positions, 0, positions, 0,
+                                         positions.length);
+                        positions[slot] =
+                            Math.floorMod(positions[slot] + ring - ring0,
+                                          size);
+                        if (slot > 1) {
+                            positions[slot - 1] =
+                                Math.floorMod(positions[slot - 1] + d, size);
+                        } else if (d != 0) {
+                            continue;
+                        }
+                        for (int s = 1; s < positions.length; s++) {
+                            cursor.set(s, positions[s]);
+                        }
+                        for (int t = 0; t < len; t++) {
+                            cursor.step();
+                            trial[t] = plug.permute(
+                                cursor.substitute(plug.permute(text[t])));
+                        }
+                        _decryptions += 1;
+                        double score = _model.score(trial, len, 0, len);
+                        if (score > _score + EPSILON) {
+                            _score = score;
+                            bestRing = ring;
+                            System.arraycopy(positions, 0, best, 0,
+                                             best.length);
+                            improved = true;
+                        }
+                    }
+                }
+                _rings[slot] = bestRing;
+                System.arraycopy(best, 0, _positions, 0, best.length);
+            }
+            return improved;
+        }
+
+        /** Compute _core for my rotor settings, and _plain and _score for
+         *  my plugboard. */
+        private void buildCore() {
+            int len = _text.length;
+            Alphabet alpha = _config.alphabet();
+            Machine machine = configured(_order, _rings);
+            char[] setting = new char[_positions.length - 1];
+            for (int slot = 1; slot < _positions.length; slot++) {
+                setting[slot - 1] = alpha.toChar(_positions[slot]);
+            }
+            machine.setRotors(new String(setting));
+            _core = machine.rotorCore(len);
+            if (_plain == null) {
+                _plain = new int[len];
+                _trial = new int[len];
+                _changed = new int[len];
+                _saved = new int[len];
+            }
+            _core.convert(_text, len, _plug, _plain);
+            _score = _model.score(_plain, len, 0, len);
+        }
+
+        /** Hill-climb the plugboard on my n-gram model, adding, removing
+         *  or exchanging one pair at a time until no change helps. */
+        private void climbPlugboard() {
+            int size = _plug.size();
+            boolean improved = true;
+            while (improved) {
+                improved = false;
+                for (int a = 0; a < size; a++) {
+                    for (int b = a + 1; b < size; b++) {
+                        improved |= trySwap(a, b);
+                    }
+                }
+            }
+        }
+
+        /** Try connecting A and B on the plugboard (or disconnecting them
+         *  if they are connected), disconnecting their old partners.
+         *  Keep the change and return true iff it raises my score. */
+        private boolean trySwap(int a, int b) {
+            if (_plug.pairsAfterSwap(a, b) > _maxPlugs) {
+                return false;
+            }
+            _plug.swap(a, b);
+            _decryptions += 1;
+            _numChanged = _core.update(_text, _text.length, _plug, _plain,
+                                       _changed, _saved);
+            if (_numChanged == 0) {
+                _plug.unswap();
+                return false;
+            }
+            double after = affectedScore();
+            RotorCore.restore(_plain, _changed, _saved, _numChanged);
+            double delta = after - affectedScore();
+            if (delta > EPSILON) {
+                _core.update(_text, _text.length, _plug, _plain, _changed,
+                             _saved);
+                _score += delta;
+                return true;
+            }
+            _plug.unswap();
+            return false;
+        }
+
+        /** Return the score of the n-grams of _plain that cover any of the
+         *  positions in _changed, counting each once. */
+        private double affectedScore() {
+            int order = _model.order();
+            double result = 0;
+            int next = 0;
+            for (int k = 0; k < _numChanged; k++) {
+                int t = _changed[k];
+                int from = Math.max(next, t - order + 1);
+                result += _model.score(_plain, _plain.length, from, t + 1);
+                next = t + 1;
+            }
+            return result;
+        }
+
+        /** Return my key as a settings line with ring settings. */
+        String key() {
+            Alphabet alpha = _config.alphabet();
+            StringBuilder key = new StringBuilder(String.join(" ", _order));
+            key.append(' ');
+            for (int slot = 1; slot < _positions.length; slot++) {
+                key.append(alpha.toChar(_positions[slot]));
+            }
+            key.append(' ');
+            for (int slot = 1; slot < _rings.length; slot++) {
+                key.append(alpha.toChar(_rings[slot]));
+            }
+            if (_plug.pairs() > 0) {
+                key.append(' ').append(_plug);
+            }
+            return key.toString();
+        }
+
+        /** The ciphertext. */
+        private final int[] _text;
+        /** My rotor order. */
+        private final String[] _order;
+        /** My starting positions, indexed by slot. */
+        private final int[] _positions;
+        /** My ring settings, indexed by slot. */
+        private final int[] _rings;
+        /** My plugboard. */
+        private final Plugboard _plug;
+        /** The substitutions of my rotors at each position. */
+        private RotorCore _core;
+        /** My current decryption. */
+        private int[] _plain;
+        /** The score of _plain. */
+        private double _score = Double.NEGATIVE_INFINITY;
+        /** Scratch decryption for climbSettings. */
+        private int[] _trial;
+        /** Positions changed by the last trial. */
+        private int[] _changed;
+        /** The letters of _plain at _changed before the last trial. */
+        private int[] _saved;
+        /** Number of entries of _changed in use. */
+        private int _numChanged;
+        /** Number of trial decryptions made. */
+        private long _decryptions;
+    }
+
+    /** Return the sum over letters of N * (N - 1), where N is the number
+     *  of times the letter occurs in the decryption of TEXT by CURSOR with
+     *  its rotors at POSITIONS.  This is the index of coincidence scaled
+     *  by a constant.  COUNTS is scratch space of one entry per letter. */
+    private static long coincidences(CompiledMachine.Cursor cursor,
+                                     int[] positions, int[] text,
+                                     int[] counts) {
+        for (int slot = 1; slot < positions.length; slot++) {
+            cursor.set(slot, positions[slot]);
+        }
+        Arrays.fill(counts, 0);
+        for (int c : text) {
+            cursor.step();
+            counts[cursor.substitute(c)] += 1;
+        }
+        long result = 0;
+        for (int n : counts) {
+            result += (long) n * (n - 1);
+        }
+        return result;
+    }
+
+    /** Return the compiled machine with rotors ORDER, the ring settings
+     *  RINGS (indexed by slot) and no plugboard, at all positions 0. */
+    private CompiledMachine machine(String[] order, int[] rings) {
+        return new CompiledMachine(configured(order, rings));
+    }
+
+    /** Return a machine with my configuration, rotors ORDER and the ring
+     *  settings RINGS (indexed by slot), at all positions 0. */
+    private Machine configured(String[] order, int[] rings) {
+        Alphabet alpha = _config.alphabet();
+        Machine machine = _config.copyConfiguration();
+        machine.insertRotors(order);
+        char[] ringchars = new char[rings.length - 1];
+        for (int slot = 1; slot < rings.length; slot++) {
+            ringchars[slot - 1] = alpha.toChar(rings[slot]);
+        }
+        machine.setRings(new String(ringchars));
+        return machine;
+    }
+
+    /** The machine whose configuration I use. */
+    private final Machine _config;
+    /** The model scoring plugboard trials. */
+    private final NgramModel _model;
+    /** The pool that runs attacks. */
+    private final ForkJoinPool _pool;
+    /** Rotor orders tried. */
+    private List<String[]> _orders;
+    /** Number of candidates kept from the first stage. */
+    private int _candidates = 10;
+    /** Largest number of plugboard pairs. */
+    private int _maxPlugs = 10;
+
+    /** Smallest change in score counted as an improvement, so that
+     *  rounding cannot make a climb cycle. */
+    private static final double EPSILON = 1e-9;
+}
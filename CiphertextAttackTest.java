@@ -0,0 +1,134 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import static enigma.TestUtils.*;
+import static enigma.MachineTest.*;
+
+/** The suite of all JUnit tests for the CiphertextAttack and NgramModel
+ *  classes.
+ *  @author Xuanyi Zhang
+ */
+public class CiphertextAttackTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** A sample of English for the n-gram models. */
+    private static final String CORPUS =
+        "It was the best of times, it was the worst of times, it was the "
+        + "age of wisdom, it was the age of foolishness, it was the epoch "
+        + "of belief, it was the epoch of incredulity, it was the season "
+        + "of light, it was the season of darkness, it was the spring of "
+        + "hope, it was the winter of despair, we had everything before "
+        + "us, we had nothing before us, we were all going direct to "
+        + "heaven, we were all going direct the other way. In short, the "
+        + "period was so far like the present period, that some of its "
+        + "noisiest authorities insisted on its being received, for good "
+        + "or for evil, in the superlative degree of comparison only. "
+        + "There were a king with a large jaw and a queen with a plain "
+        + "face, on the throne of England; there were a king with a large "
+        + "jaw and a queen with a fair face, on the throne of France. In "
+        + "both countries it was clearer than crystal to the lords of the "
+        + "State preserves of loaves and fishes, that things in general "
+        + "were settled for ever. Call me Ishmael. Some years ago, never "
+        + "mind how long precisely, having little or no money in my purse, "
+        + "and nothing particular to interest me on shore, I thought I "
+        + "would sail about a little and see the watery part of the world. "
+        + "It is a way I have of driving off the spleen and regulating the "
+        + "circulation. Whenever I find myself growing grim about the "
+        + "mouth; whenever it is a damp, drizzly November in my soul; "
+        + "whenever I find myself involuntarily pausing before coffin "
+        + "warehouses, and bringing up the rear of every funeral I meet; "
+        + "then, I account it high time to get to sea as soon as I can. "
+        + "It is a truth universally acknowledged, that a single man in "
+        + "possession of a good fortune, must be in want of a wife. "
+        + "However little known the feelings or views of such a man may "
+        + "be on his first entering a neighbourhood, this truth is so well "
+        + "fixed in the minds of the surrounding families, that he is "
+        + "considered the rightful property of some one or other of their "
+        + "daughters.";
+
+    /** A message to attack, not taken from CORPUS. */
+    private static final String MESSAGE =
+        "THE CONVOY WILL LEAVE THE HARBOUR AT DAWN ON THE SECOND DAY OF "
+        + "THE MONTH AND WILL PROCEED TO THE NORTH ALONG THE COAST UNTIL "
+        + "IT MEETS THE ESCORT OF DESTROYERS THAT WAS SENT FROM THE "
+        + "SOUTHERN PORT TWO DAYS BEFORE ALL SHIPS ARE TO KEEP A GOOD "
+        + "WATCH FOR SUBMARINES AND AIRCRAFT AND TO REPORT ANY CONTACT AT "
+        + "ONCE TO THE COMMANDER OF THE ESCORT WHO WILL GIVE THE ORDERS "
+        + "FOR THE DEFENCE OF THE CONVOY AS HE THINKS BEST THE WEATHER "
+        + "IS EXPECTED TO BE FAIR WITH A LIGHT WIND FROM THE WEST";
+
+    @Test
+    public void testNgramModel() {
+        NgramModel model = new NgramModel(UPPER, 2, "THE THE, TEA");
+        assertEquals(2, model.order());
+        int[] th = { UPPER.toInt('T'), UPPER.toInt('H'), UPPER.toInt('E') };
+        assertEquals(Math.log(2.0 / 8), model.logp(th, 0), 1e-9);
+        assertEquals(Math.log(2.0 / 8) * 2, model.score(th, 3, 0, 3), 1e-9);
+        int[] zz = { UPPER.toInt('Z'), UPPER.toInt('Z') };
+        assertEquals(Math.log(0.01 / 8), model.logp(zz, 0), 1e-9);
+    }
+
+    @Test
+    public void testLargeNgramTable() {
+        char[] chars = new char[256];
+        for (int k = 0; k < chars.length; k += 1) {
+            chars[k] = (char) (0x100 + k);
+        }
+        Alphabet alpha = new Alphabet(new String(chars));
+        String corpus = new String(new char[] { chars[255], chars[255],
+                                                chars[255], chars[254] });
+        NgramModel model = new NgramModel(alpha, 3, corpus);
+        int[] text = { 255, 255, 255, 254 };
+        assertEquals(Math.log(1.0 / 2), model.logp(text, 0), 1e-9);
+        assertEquals(Math.log(1.0 / 2), model.logp(text, 1), 1e-9);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testEmptyCorpus() {
+        new NgramModel(UPPER, 3, "A B");
+    }
+
+    @Test
+    public void testRecoversKey() {
+        Machine machine = smallMachine(4);
+        machine.insertRotors(new String[] { "B", "II", "I", "III" });
+        machine.setRings("AAK");
+        machine.setRotors("QFX");
+        machine.setPlugboard(new Permutation("(AT) (LR) (OS)", UPPER));
+        String ciphertext = machine.convert(MESSAGE);
+
+        NgramModel model = new NgramModel(UPPER, 3, CORPUS.toUpperCase());
+        CiphertextAttack attack = new CiphertextAttack(smallMachine(4), model);
+        attack.setMaxPlugs(3);
+        attack.setOrders(List.<String[]>of(
+            new String[] { "B", "I", "II", "III" },
+            new String[] { "B", "II", "I", "III" }));
+        CiphertextAttack.Result result = attack.attack(ciphertext);
+        assertEquals(result.key(), MESSAGE, result.plaintext());
+        assertTrue(result.key().startsWith("B II I III "));
+        assertTrue(result.decryptions() > 2 * 26 * 26 * 26);
+        int[] letters = indices(MESSAGE);
+        assertEquals(model.score(letters, letters.length, 0, letters.length),
+                     result.score(), 1e-6);
+    }
+
+    /** Return the alphabet indices of the letters of MSG, skipping
+     *  spaces. */
+    private static int[] indices(String msg) {
+        String letters = msg.replace(" ", "");
+        int[] result = new int[letters.length()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = UPPER.toInt(letters.charAt(i));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,305 @@
+package enigma;
+
+import java.util.Objects;
+
+import static enigma.EnigmaException.*;
+
+/** An immutable snapshot of the wiring, ring settings and starting
+ *  positions of a configured Machine.  A CompiledMachine is safe to share
+ *  between threads; each thread converts through its own Cursor, which
+ *  holds nothing but the current rotor positions.
+ *  @author Xuanyi Zhang
+ */
+final class CompiledMachine {
+
+    /** A snapshot of MACHINE, which must have its rotors and plugboard
+     *  set.  Its current rotor settings become my starting positions.
+     *  Later changes to MACHINE do not affect me. */
+    CompiledMachine(Machine machine) {
+        Rotor[] rotors = machine.rotors();
+        if (rotors == null) {
+            throw error("machine has no rotors");
+        }
+        _alphabet = machine.alphabet();
+        _size = _alphabet.size();
+        int numrotors = rotors.length;
+        _forward = new int[numrotors][];
+        _backward = new int[numrotors][];
+        _rings = new int[numrotors];
+        _start = new int[numrotors];
+        _rotates = new boolean[numrotors];
+        _notches = new boolean[numrotors][_size];
+        for (int i = 0; i < numrotors; i++) {
+            _forward[i] = rotors[i].forwardTable();
+            _backward[i] = rotors[i].backwardTable();
+            _rings[i] = rotors[i].rsetting();
+            _start[i] = rotors[i].setting();
+            _rotates[i] = rotors[i].rotates();
+            for (int k = 0; k < _size; k++) {
+                _notches[i][k] = rotors[i].notchAt(k);
+            }
+        }
+        _toNotch = new int[_size];
+        int next = -1;
+        for (int k = 2 * _size - 1; k >= 0; k--) {
+            if (_rotates[numrotors - 1] && _notches[numrotors - 1][k % _size]) {
+                next = k;
+            }
+            if (k < _size) {
+                _toNotch[k] = next < 0 ? -1 : next - k;
+            }
+        }
+        Permutation plugboard = machine.plugboard();
+        if (plugboard == null) {
+            plugboard = new Permutation("", _alphabet);
+        }
+        _plugForward = new int[_size];
+        _plugBackward = new int[_size];
+        for (int k = 0; k < _size; k++) {
+            _plugForward[k] = plugboard.permute(k);
+            _plugBackward[k] = plugboard.invert(k);
+        }
+    }
+
+    /** Return a compiled machine for the configuration of CONFIG (its
+     *  alphabet, slots, pawls and available rotors) set up by SETTINGS, a
+     *  settings line without its leading '*'.  Rotors without ring
+     *  settings have ring setting 0.  CONFIG itself is never modified. */
+    static CompiledMachine compile(Machine config, String settings) {
+        Settings parsed = new Settings(settings, config.numRotors());
+        Machine machine = config.copyConfiguration();
+        machine.insertRotors(parsed.rotors());
+        if (parsed.rings() != null) {
+            machine.setRings(parsed.rings());
+        }
+        machine.setRotors(parsed.setting());
+        machine.setPlugboard(new Permutation(parsed.plugboard(),
+                                             config.alphabet()));
+        return new CompiledMachine(machine);
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the number of rotor slots I have. */
+    int numRotors() {
+        return _start.length;
+    }
+
+    /** Return the approximate number of bytes used by my wiring
+     *  tables. */
+    long footprint() {
+        long size = _size;
+        return 64 + 8 * numRotors() * size * size;
+    }
+
+    /** Return a new cursor at my starting positions. */
+    Cursor cursor() {
+        return new Cursor(_start);
+    }
+
+    /** Return a new cursor whose rotors (not counting the reflector) are
+     *  at SETTING, a string of numRotors()-1 characters of my alphabet,
+     *  as for Machine.setRotors. */
+    Cursor cursor(String setting) {
+        if (setting.length() != numRotors() - 1) {
+            throw new EnigmaException("wrong setting number");
+        }
+        int[] positions = _start.clone();
+        for (int i = 0; i < setting.length(); i++) {
+            if (!_alphabet.contains(setting.charAt(i))) {
+                throw new EnigmaException("setting not in alphabet");
+            }
+            positions[i + 1] = _alphabet.toInt(setting.charAt(i));
+        }
+        return new Cursor(positions);
+    }
+
+    /** The rotor positions of one conversion session over a shared
+     *  CompiledMachine.  Not safe for concurrent use by several threads;
+     *  give each thread its own cursor instead. */
+    final class Cursor {
+
+        /** A cursor whose rotors are at POSITIONS, indexed by slot. */
+        private Cursor(int[] positions) {
+            _positions = positions.clone();
+            _bases = new int[positions.length];
+            for (int i = 0; i < positions.length; i++) {
+                _bases[i] = base(i);
+            }
+        }
+
+        /** Return the machine I convert with. */
+        CompiledMachine machine() {
+            return CompiledMachine.this;
+        }
+
+        /** Return the current setting of the rotor in SLOT. */
+        int setting(int slot) {
+            return _positions[slot];
+        }
+
+        /** Returns the result of converting the input character C (as an
+         *  index in the range 0..alphabet size - 1), after first advancing
+         *  my rotors, exactly as Machine.convert(int) does. */
+        int convert(int c) {
+            if (c >= _size || c < 0) {
+                throw new EnigmaException("bad input character");
+            }
+            step();
+            return substitute(c);
+        }
+
+        /** Move the rotor in SLOT to POSITION, an index in my
+         *  alphabet. */
+        void set(int slot, int position) {
+            if (position < 0 || position >= _size) {
+                throw new EnigmaException("setting not in alphabet");
+            }
+            _positions[slot] = position;
+            _bases[slot] = base(slot);
+        }
+
+        /** Return a new cursor at my current positions. */
+        Cursor copy() {
+            return new Cursor(_positions);
+        }
+
+        /** Advance my rotors as for one character of input. */
+        void step() {
+            int last = _positions.length - 1;
+            /* Going left to right, each notch is read before its own
+             * rotor moves, as if all were read first. */
+            for (int i = 1; i < last; i++) {
+                boolean advance = _notches[i + 1][_positions[i + 1]]
+                    || (i > 1 && _rotates[i - 1]
+                        && _notches[i][_positions[i]]);
+                if (advance && _rotates[i]) {
+                    advanceSlot(i);
+                }
+            }
+            if (_rotates[last]) {
+                advanceSlot(last);
+            }
+        }
+
+        /** Step my rotors exactly as N calls to step() would, taking runs
+         *  of steps in which only the rightmost rotor moves in a single
+         *  jump, as Machine.skip does. */
+        void skip(long n) {
+            int last = _positions.length - 1;
+            while (n > 0) {
+                boolean quiet = true;
+                for (int i = 1; i < last && quiet; i++) {
+                    quiet = !_rotates[i]
+                        || !(_notches[i + 1][_positions[i + 1]]
+                             || (i > 1 && _rotates[i - 1]
+                                 && _notches[i][_positions[i]]));
+                }
+                int toNotch = _toNotch[_positions[last]];
+                if (quiet && toNotch != 0) {
+                    long k = toNotch < 0 ? n : Math.min(n, toNotch);
+                    if (_rotates[last]) {
+                        _positions[last] =
+                            (int) ((_positions[last] + k) % _size);
+                        _bases[last] = base(last);
+                    }
+                    n -= k;
+                } else {
+                    step();
+                    n -= 1;
+                }
+            }
+        }
+
+        /** Return the conversion of C (an index in the range 0..alphabet
+         *  size - 1) at my current positions, without moving my rotors. */
+        int substitute(int c) {
+            int last = _positions.length - 1;
+            int p = _plugForward[c];
+            for (int i = last; i >= 0; i--) {
+                p = _forward[i][_bases[i] + p];
+            }
+            for (int j = 1; j <= last; j++) {
+                p = _backward[j][_bases[j] + p];
+            }
+            return _plugBackward[p];
+        }
+
+        /** Returns the encoding/decoding of MSG, as for
+         *  Machine.convert(String). */
+        String convert(String msg) {
+            char[] msgchar = msg.toCharArray();
+            convert(msgchar, 0, msgchar.length, msgchar, 0);
+            return new String(msgchar);
+        }
+
+        /** Convert the LEN characters of SRC starting at OFF into DST
+         *  starting at DSTOFF, as for Machine.convert(char[], int, int,
+         *  char[], int). */
+        void convert(char[] src, int off, int len, char[] dst, int dstOff) {
+            Objects.checkFromIndexSize(off, len, src.length);
+            Objects.checkFromIndexSize(dstOff, len, dst.length);
+            for (int i = off; i < off + len; i++) {
+                if (!_alphabet.contains(src[i]) && src[i] != ' ') {
+                    throw new EnigmaException("bad message");
+                }
+            }
+            for (int i = 0; i < len; i++) {
+                char ch = src[off + i];
+                dst[dstOff + i] = ch == ' '
+                    ? ' ' : _alphabet.toChar(convert(_alphabet.toInt(ch)));
+            }
+        }
+
+        /** Advance the rotor in SLOT one position. */
+        private void advanceSlot(int slot) {
+            int next = _positions[slot] + 1;
+            _positions[slot] = next == _size ? 0 : next;
+            _bases[slot] = base(slot);
+        }
+
+        /** Return the offset of the current row of the wiring tables of the
+         *  rotor in SLOT. */
+        private int base(int slot) {
+            int shift = _positions[slot] - _rings[slot];
+            if (shift < 0) {
+                shift += _size;
+            }
+            return shift * _size;
+        }
+
+        /** The setting of the rotor in each slot. */
+        private final int[] _positions;
+        /** The offset of the current row of each slot's wiring tables. */
+        private final int[] _bases;
+    }
+
+    /** My alphabet. */
+    private final Alphabet _alphabet;
+    /** The size of my alphabet. */
+    private final int _size;
+    /** Forward wiring tables of each slot, as for Rotor.forwardTable. */
+    private final int[][] _forward;
+    /** Backward wiring tables of each slot. */
+    private final int[][] _backward;
+    /** Ring setting of each slot. */
+    private final int[] _rings;
+    /** Starting position of each slot. */
+    private final int[] _start;
+    /** Entry K is true iff the rotor in slot K rotates. */
+    private final boolean[] _rotates;
+    /** Entry [K][P] is true iff the rotor in slot K is at a notch at
+     *  setting P. */
+    private final boolean[][] _notches;
+    /** Entry P is the number of steps that bring the rightmost rotor from
+     *  setting P to a notch (0 if it is at one), or -1 if it never
+     *  reaches one. */
+    private final int[] _toNotch;
+    /** The plugboard permutation. */
+    private final int[] _plugForward;
+    /** The inverse of the plugboard permutation. */
+    private final int[] _plugBackward;
+}
@@ -0,0 +1,114 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+import static enigma.MachineTest.*;
+
+/** The suite of all JUnit tests for the CompiledMachine class.
+ *  @author Xuanyi Zhang
+ */
+public class CompiledMachineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Return a random message of LEN letters and spaces drawn using
+     *  RANDOM. */
+    static String randomMessage(Random random, int len) {
+        StringBuilder msg = new StringBuilder();
+        for (int i = 0; i < len; i += 1) {
+            msg.append(random.nextInt(6) == 0
+                       ? ' ' : UPPER.toChar(random.nextInt(UPPER.size())));
+        }
+        return msg.toString();
+    }
+
+    @Test
+    public void testMatchesMachine() {
+        Random random = new Random(61);
+        Machine M = navalMachine();
+        M.insertRotors(new String[] { "C", "Gamma", "VI", "I", "VIII" });
+        M.setRings("BQZA");
+        M.setRotors("XDYL");
+        M.setPlugboard(new Permutation("(AQ) (MZ) (CE)", UPPER));
+        CompiledMachine compiled = new CompiledMachine(M);
+        CompiledMachine.Cursor cursor = compiled.cursor();
+        for (int trial = 0; trial < 20; trial += 1) {
+            String msg = randomMessage(random, 2000);
+            assertEquals(M.convert(msg), cursor.convert(msg));
+        }
+        for (int i = 1; i < M.rotors().length; i += 1) {
+            assertEquals(M.rotors()[i].setting(), cursor.setting(i));
+        }
+    }
+
+    @Test
+    public void testSkip() {
+        Random random = new Random(61);
+        String[][] orders = {
+            { "B", "Beta", "III", "IV", "I" },
+            { "C", "Gamma", "VI", "VII", "VIII" },
+            { "B", "Beta", "I", "II", "III" },
+        };
+        for (String[] order : orders) {
+            Machine M = navalMachine();
+            M.insertRotors(order);
+            M.setPlugboard(new Permutation("", UPPER));
+            CompiledMachine compiled = new CompiledMachine(M);
+            for (int trial = 0; trial < 20; trial += 1) {
+                String settings = "";
+                for (int i = 0; i < 4; i += 1) {
+                    settings += UPPER.toChar(random.nextInt(UPPER.size()));
+                }
+                CompiledMachine.Cursor stepped = compiled.cursor(settings);
+                CompiledMachine.Cursor skipped = stepped.copy();
+                int n = random.nextInt(20000);
+                for (int i = 0; i < n; i += 1) {
+                    stepped.step();
+                }
+                skipped.skip(n);
+                for (int slot = 1; slot < 5; slot += 1) {
+                    assertEquals(stepped.setting(slot),
+                                 skipped.setting(slot));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testCursorsAreIndependent() throws InterruptedException {
+        Machine M = navalMachine();
+        sampleSettings(M);
+        CompiledMachine compiled = new CompiledMachine(M);
+        String expected = M.convert("FROMHISSHOULDERHIAWATHA");
+        M.setRotors("ZZZZ");
+        String[] results = new String[8];
+        Thread[] threads = new Thread[results.length];
+        for (int t = 0; t < threads.length; t += 1) {
+            final int k = t;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 1000; i += 1) {
+                    results[k] = compiled.cursor()
+                        .convert("FROMHISSHOULDERHIAWATHA");
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (String result : results) {
+            assertEquals(expected, result);
+        }
+        assertEquals(expected,
+                     compiled.cursor("AXLE").convert(
+                         "FROMHISSHOULDERHIAWATHA"));
+    }
+}
@@ -0,0 +1,207 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** A single-pass tokenizer and parser for the configuration file format:
+ *  the alphabet, the number of rotor slots and of pawls, and then one
+ *  description per rotor, each a name, a type (M followed by the notches,
+ *  N or R) and the rotor's cycles.  Cycles may continue on following lines
+ *  that begin with '('.  Errors are reported with the line and column
+ *  (both numbered from 1) at which they were found.
+ *  @author Xuanyi Zhang
+ */
+final class ConfigParser {
+
+    /** A parser reading the configuration in TEXT. */
+    ConfigParser(String text) {
+        _text = text;
+    }
+
+    /** Return the alphabet that starts the configuration. */
+    Alphabet readAlphabet() {
+        skipWhitespace();
+        if (atEnd()) {
+            throw new EnigmaException("no alphabet");
+        }
+        int line = _line, column = column();
+        String chars = nextToken();
+        skipSpaces();
+        if (!atEnd() && !atNewline()) {
+            throw errorAt("alphabet may not contain whitespace");
+        }
+        try {
+            return new Alphabet(chars);
+        } catch (EnigmaException excp) {
+            throw errorAt(line, column, excp.getMessage());
+        }
+    }
+
+    /** Return the next token as an integer, reporting MSG if it is missing
+     *  or not an integer. */
+    int readInt(String msg) {
+        skipWhitespace();
+        if (atEnd()) {
+            throw errorAt(msg);
+        }
+        int line = _line, column = column();
+        try {
+            return Integer.parseInt(nextToken());
+        } catch (NumberFormatException excp) {
+            throw errorAt(line, column, msg);
+        }
+    }
+
+    /** Return true iff anything but whitespace remains. */
+    boolean hasMore() {
+        skipWhitespace();
+        return !atEnd();
+    }
+
+    /** Return the next rotor description as a rotor over ALPHABET. */
+    Rotor readRotor(Alphabet alphabet) {
+        if (!hasMore()) {
+            throw errorAt("no more rotors to read");
+        }
+        int line = _line, column = column();
+        String name = nextToken();
+        skipSpaces();
+        if (atEnd() || atNewline()) {
+            throw errorAt("bad rotor description");
+        }
+        int typeColumn = column();
+        String typennotch = nextToken();
+        char type = typennotch.charAt(0);
+        if (type != 'M' && type != 'N' && type != 'R') {
+            throw errorAt(_line, typeColumn, "bad rotor type");
+        }
+        for (int i = 1; i < typennotch.length(); i++) {
+            if (!alphabet.contains(typennotch.charAt(i))) {
+                throw errorAt(_line, typeColumn + i,
+                              "notch not in alphabet");
+            }
+        }
+        String cycles = readCycles(alphabet);
+        Permutation perm;
+        try {
+            perm = new Permutation(cycles, alphabet);
+        } catch (EnigmaException excp) {
+            throw errorAt(line, column, excp.getMessage());
+        }
+        if (type == 'M') {
+            return new MovingRotor(name, perm, typennotch.substring(1));
+        } else if (type == 'N') {
+            return new FixedRotor(name, perm);
+        } else {
+            return new Reflector(name, perm);
+        }
+    }
+
+    /** Read the cycles of a rotor, starting just after its type and
+     *  continuing onto following lines that begin with '(', and return
+     *  them as a string for the Permutation constructor.  Each character
+     *  must be in ALPHABET. */
+    private String readCycles(Alphabet alphabet) {
+        StringBuilder cycles = new StringBuilder();
+        while (true) {
+            skipSpaces();
+            if (atEnd() || atNewline()) {
+                int mark = _pos;
+                int markLine = _line, markLineStart = _lineStart;
+                skipWhitespace();
+                if (atEnd() || _text.charAt(_pos) != '(') {
+                    _pos = mark;
+                    _line = markLine;
+                    _lineStart = markLineStart;
+                    return cycles.toString();
+                }
+            }
+            if (_text.charAt(_pos) != '(') {
+                throw errorAt("expected '('");
+            }
+            cycles.append('(');
+            _pos += 1;
+            int start = _pos;
+            while (!atEnd() && _text.charAt(_pos) != ')') {
+                char c = _text.charAt(_pos);
+                if (Character.isWhitespace(c)) {
+                    throw errorAt("unterminated cycle");
+                } else if (!alphabet.contains(c)) {
+                    throw errorAt("character not in alphabet");
+                }
+                cycles.append(c);
+                _pos += 1;
+            }
+            if (atEnd()) {
+                throw errorAt("unterminated cycle");
+            } else if (_pos == start) {
+                throw errorAt("empty cycle");
+            }
+            cycles.append(')');
+            _pos += 1;
+        }
+    }
+
+    /** Return the token starting at the current position, which must not
+     *  be whitespace, and advance past it. */
+    private String nextToken() {
+        int start = _pos;
+        while (!atEnd() && !Character.isWhitespace(_text.charAt(_pos))) {
+            _pos += 1;
+        }
+        return _text.substring(start, _pos);
+    }
+
+    /** Skip all whitespace, including ends of lines. */
+    private void skipWhitespace() {
+        while (!atEnd() && Character.isWhitespace(_text.charAt(_pos))) {
+            if (_text.charAt(_pos) == '\n') {
+                _line += 1;
+                _lineStart = _pos + 1;
+            }
+            _pos += 1;
+        }
+    }
+
+    /** Skip whitespace up to the end of the current line. */
+    private void skipSpaces() {
+        while (!atEnd() && !atNewline()
+               && Character.isWhitespace(_text.charAt(_pos))) {
+            _pos += 1;
+        }
+    }
+
+    /** Return true iff the whole text has been read. */
+    private boolean atEnd() {
+        return _pos >= _text.length();
+    }
+
+    /** Return true iff the current position ends a line. */
+    private boolean atNewline() {
+        char c = _text.charAt(_pos);
+        return c == '\n' || c == '\r';
+    }
+
+    /** Return the column of the current position. */
+    private int column() {
+        return _pos - _lineStart + 1;
+    }
+
+    /** Return an exception reporting MSG at the current position. */
+    private EnigmaException errorAt(String msg) {
+        return errorAt(_line, column(), msg);
+    }
+
+    /** Return an exception reporting MSG at LINE and COLUMN. */
+    private static EnigmaException errorAt(int line, int column, String msg) {
+        return error("line %d, column %d: %s", line, column, msg);
+    }
+
+    /** The configuration text. */
+    private final String _text;
+    /** The current position in _text. */
+    private int _pos;
+    /** The line containing _pos. */
+    private int _line = 1;
+    /** The position in _text at which _line starts. */
+    private int _lineStart;
+}
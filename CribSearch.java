@@ -0,0 +1,412 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import static enigma.EnigmaException.*;
+
+/** A known-plaintext key search.  Given a ciphertext and a crib, a piece
+ *  of plaintext believed to start at a given letter of it, a CribSearch
+ *  tries every rotor order, ring setting and starting position of a
+ *  machine configuration and reports those that encrypt the crib to the
+ *  ciphertext at that point.  The plugboard is taken as known.
+ *
+ *  Because a reflector maps no letter to itself, a crib can only lie
+ *  where none of its letters matches the ciphertext letter beneath it;
+ *  other offsets are rejected without searching.  Candidates are tested
+ *  with CompiledMachine cursors on a ForkJoinPool, and most are rejected
+ *  at the crib's first letter.  Spaces in the ciphertext and crib are
+ *  ignored; offsets count letters.
+ *  @author Xuanyi Zhang
+ */
+final class CribSearch {
+
+    /** The outcome of a search. */
+    static final class Result {
+
+        /** A result reporting KEYS after testing CANDIDATES keys in NANOS
+         *  nanoseconds. */
+        Result(List<String> keys, long candidates, long nanos) {
+            _keys = keys;
+            _candidates = candidates;
+            _nanos = nanos;
+        }
+
+        /** Return the settings lines (without '*', and with ring settings)
+         *  of the keys that matched, in sorted order. */
+        List<String> keys() {
+            return _keys;
+        }
+
+        /** Return the number of keys tested. */
+        long candidates() {
+            return _candidates;
+        }
+
+        /** Return the time taken in seconds. */
+        double seconds() {
+            return _nanos * 1e-9;
+        }
+
+        /** Return the number of keys tested per second. */
+        double candidatesPerSecond() {
+            return _candidates / Math.max(seconds(), 1e-9);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d keys matched of %d tested in %.3f s "
+                                 + "(%.0f candidates/s)", _keys.size(),
+                                 _candidates, seconds(),
+                                 candidatesPerSecond());
+        }
+
+        /** Matching keys. */
+        private final List<String> _keys;
+        /** Number of keys tested. */
+        private final long _candidates;
+        /** Time taken. */
+        private final long _nanos;
+    }
+
+    /** A search over the configuration of CONFIG (its alphabet, slots,
+     *  pawls and available rotors) running on POOL.  Initially every
+     *  rotor order is tried, all ring settings are 0, and there is no
+     *  plugboard.  CONFIG itself is never modified. */
+    CribSearch(Machine config, ForkJoinPool pool) {
+        _config = config;
+        _pool = pool;
+        _orders = rotorOrders(config);
+        setPlugboard("");
+    }
+
+    /** A search over CONFIG on the common fork-join pool. */
+    CribSearch(Machine config) {
+        this(config, ForkJoinPool.commonPool());
+    }
+
+    /** Try only the rotor orders ORDERS, each naming a rotor for every
+     *  slot, the reflector first. */
+    void setOrders(List<String[]> orders) {
+        for (String[] order : orders) {
+            _config.selectRotors(order);
+        }
+        _orders = new ArrayList<>(orders);
+    }
+
+    /** Return the rotor orders tried. */
+    List<String[]> orders() {
+        return Collections.unmodifiableList(_orders);
+    }
+
+    /** Try every ring setting of the rightmost SLOTS rotors, leaving the
+     *  others at 0.  The ring of a rotor that does not step during the
+     *  message is equivalent to a change of its starting position, so
+     *  only the fast and middle rotors' rings usually need searching. */
+    void setRingSlots(int slots) {
+        if (slots < 0 || slots > _config.numRotors() - 1) {
+            throw error("cannot search rings of %d rotors", slots);
+        }
+        _ringSlots = slots;
+    }
+
+    /** Use the plugboard given by CYCLES. */
+    void setPlugboard(String cycles) {
+        _plugboardPerm = new Permutation(cycles, _config.alphabet());
+        _plugboard = cycles;
+    }
+
+    /** Return true iff CRIB may lie at letter OFFSET of CIPHERTEXT: it
+     *  fits, and none of its letters is the ciphertext letter beneath
+     *  it. */
+    static boolean placeable(String ciphertext, String crib, int offset) {
+        String text = letters(ciphertext), plain = letters(crib);
+        if (offset < 0 || offset + plain.length() > text.length()) {
+            return false;
+        }
+        for (int k = 0; k < plain.length(); k++) {
+            if (plain.charAt(k) == text.charAt(offset + k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return the offsets at which CRIB may lie in CIPHERTEXT. */
+    static List<Integer> offsets(String ciphertext, String crib) {
+        List<Integer> result = new ArrayList<>();
+        int last = letters(ciphertext).length() - letters(crib).length();
+        for (int offset = 0; offset <= last; offset++) {
+            if (placeable(ciphertext, crib, offset)) {
+                result.add(offset);
+            }
+        }
+        return result;
+    }
+
+    /** Return the keys that encrypt CRIB to the letters of CIPHERTEXT
+     *  starting at letter OFFSET. */
+    Result search(String ciphertext, String crib, int offset) {
+        long start = System.nanoTime();
+        if (!placeable(ciphertext, crib, offset)) {
+            return new Result(List.of(), 0, System.nanoTime() - start);
+        }
+        int[] text = indices(letters(ciphertext));
+        int[] plain = indices(letters(crib));
+        int[] expected = new int[plain.length];
+        System.arraycopy(text, offset, expected, 0, plain.length);
+        Queue<String> keys = new ConcurrentLinkedQueue<>();
+        long units = (long) _orders.size() * ringCombinations() * size();
+        long candidates = units == 0 ? 0 : _pool.invoke(
+            new SearchTask(plain, expected, offset, keys, 0, units));
+        List<String> sorted = new ArrayList<>(keys);
+        Collections.sort(sorted);
+        return new Result(sorted, candidates, System.nanoTime() - start);
+    }
+
+    /** Return the keys that encrypt CRIB to CIPHERTEXT at any offset where
+     *  it may lie, as for search(String, String, int). */
+    Result search(String ciphertext, String crib) {
+        long start = System.nanoTime();
+        List<String> keys = new ArrayList<>();
+        long candidates = 0;
+        for (int offset : offsets(ciphertext, crib)) {
+            Result result = search(ciphertext, crib, offset);
+            keys.addAll(result.keys());
+            candidates += result.candidates();
+        }
+        Collections.sort(keys);
+        return new Result(keys, candidates, System.nanoTime() - start);
+    }
+
+    /** Searches a range of work units.  Unit U is rotor order U / (R * N),
+     *  ring combination (U / N) % R and leftmost rotor position U % N,
+     *  where R is the number of ring combinations and N the alphabet
+     *  size. */
+    private class SearchTask extends RecursiveTask<Long> {
+
+        /** Searches units LO .. HI-1 for keys taking PLAIN to EXPECTED,
+         *  when PLAIN starts at letter OFFSET, adding them to KEYS. */
+        SearchTask(int[] plain, int[] expected, int offset,
+                   Queue<String> keys, long lo, long hi) {
+            _plain = plain;
+            _expected = expected;
+            _offset = offset;
+            _keys = keys;
+            _lo = lo;
+            _hi = hi;
+        }
+
+        @Override
+        protected Long compute() {
+            if (_hi - _lo > 1) {
+                long mid = (_lo + _hi) / 2;
+                SearchTask left = new SearchTask(_plain, _expected, _offset,
+                                                 _keys, _lo, mid);
+                left.fork();
+                long right = new SearchTask(_plain, _expected, _offset,
+                                            _keys, mid, _hi).compute();
+                return left.join() + right;
+            }
+            int size = size();
+            int rings = (int) (_lo / size % ringCombinations());
+            String[] order = _orders.get((int) (_lo / size
+                                                / ringCombinations()));
+            CompiledMachine.Cursor cursor =
+                machine(order, rings).cursor();
+            int slots = _config.numRotors();
+            int[] positions = new int[slots];
+            positions[1] = (int) (_lo % size);
+            long candidates = 0;
+            do {
+                candidates += 1;
+                if (matches(cursor, positions)) {
+                    _keys.add(key(order, positions, rings));
+                }
+            } while (next(positions, size));
+            return candidates;
+        }
+
+        /** Return true iff CURSOR, with its rotors set to POSITIONS,
+         *  encrypts the crib to the expected text. */
+        private boolean matches(CompiledMachine.Cursor cursor,
+                                int[] positions) {
+            for (int slot = 1; slot < positions.length; slot++) {
+                cursor.set(slot, positions[slot]);
+            }
+            cursor.skip(_offset);
+            for (int k = 0; k < _plain.length; k++) {
+                cursor.step();
+                if (cursor.substitute(_plain[k]) != _expected[k]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /** Crib letters. */
+        private final int[] _plain;
+        /** Ciphertext letters beneath the crib. */
+        private final int[] _expected;
+        /** Position of the crib in the ciphertext. */
+        private final int _offset;
+        /** Matching keys found. */
+        private final Queue<String> _keys;
+        /** The range of units searched. */
+        private final long _lo, _hi;
+    }
+
+    /** Advance POSITIONS[2 ..] like an odometer over SIZE values, the last
+     *  slot fastest, and return false once every combination has been
+     *  produced. */
+    static boolean next(int[] positions, int size) {
+        for (int slot = positions.length - 1; slot >= 2; slot--) {
+            positions[slot] += 1;
+            if (positions[slot] < size) {
+                return true;
+            }
+            positions[slot] = 0;
+        }
+        return false;
+    }
+
+    /** Return the compiled machine with rotors ORDER, ring combination
+     *  RINGS and my plugboard, at all positions 0. */
+    private CompiledMachine machine(String[] order, int rings) {
+        Machine machine = _config.copyConfiguration();
+        machine.insertRotors(order);
+        machine.setRings(ringSetting(rings));
+        machine.setPlugboard(_plugboardPerm);
+        return new CompiledMachine(machine);
+    }
+
+    /** Return the ring settings of ring combination RINGS: the rightmost
+     *  _ringSlots rotors count through the alphabet as RINGS does in base
+     *  size(), and the others are 0. */
+    private String ringSetting(int rings) {
+        Alphabet alpha = _config.alphabet();
+        char[] result = new char[_config.numRotors() - 1];
+        for (int i = result.length - 1; i >= 0; i--) {
+            result[i] = alpha.toChar(rings % size());
+            rings /= size();
+        }
+        return new String(result);
+    }
+
+    /** Return the settings line of the key with rotors ORDER, positions
+     *  POSITIONS and ring combination RINGS. */
+    private String key(String[] order, int[] positions, int rings) {
+        Alphabet alpha = _config.alphabet();
+        StringBuilder key = new StringBuilder(String.join(" ", order));
+        key.append(' ');
+        for (int slot = 1; slot < positions.length; slot++) {
+            key.append(alpha.toChar(positions[slot]));
+        }
+        key.append(' ').append(ringSetting(rings));
+        if (!_plugboard.isEmpty()) {
+            key.append(' ').append(_plugboard);
+        }
+        return key.toString();
+    }
+
+    /** Return the number of ring combinations searched. */
+    private int ringCombinations() {
+        int result = 1;
+        for (int i = 0; i < _ringSlots; i++) {
+            result *= size();
+        }
+        return result;
+    }
+
+    /** Return the size of my alphabet. */
+    private int size() {
+        return _config.alphabet().size();
+    }
+
+    /** Return the alphabet indices of the characters of TEXT. */
+    private int[] indices(String text) {
+        Alphabet alpha = _config.alphabet();
+        int[] result = new int[text.length()];
+        for (int i = 0; i < result.length; i++) {
+            if (!alpha.contains(text.charAt(i))) {
+                throw new EnigmaException("bad message");
+            }
+            result[i] = alpha.toInt(text.charAt(i));
+        }
+        return result;
+    }
+
+    /** Return TEXT without its spaces. */
+    private static String letters(String text) {
+        return text.replace(" ", "");
+    }
+
+    /** Return every rotor order of CONFIG that a physical machine allows:
+     *  a reflector, then non-moving rotors, then moving rotors in the
+     *  last numPawls() slots, none used twice. */
+    static List<String[]> rotorOrders(Machine config) {
+        List<String> reflectors = new ArrayList<>();
+        List<String> fixed = new ArrayList<>();
+        List<String> moving = new ArrayList<>();
+        for (Rotor r : config.allRotors()) {
+            if (r.reflecting()) {
+                reflectors.add(r.name());
+            } else if (r.rotates()) {
+                moving.add(r.name());
+            } else {
+                fixed.add(r.name());
+            }
+        }
+        int numFixed = config.numRotors() - config.numPawls() - 1;
+        List<String[]> result = new ArrayList<>();
+        for (String reflector : reflectors) {
+            String[] order = new String[config.numRotors()];
+            order[0] = reflector;
+            arrangements(order, 1, numFixed, fixed, moving, result);
+        }
+        return result;
+    }
+
+    /** Fill ORDER[SLOT ..] in every way from FIXED (for slots up to
+     *  LASTFIXED) and MOVING (for the rest), without repeats, adding a
+     *  copy of each completed order to RESULT. */
+    private static void arrangements(String[] order, int slot,
+                                     int lastFixed, List<String> fixed,
+                                     List<String> moving,
+                                     List<String[]> result) {
+        if (slot == order.length) {
+            result.add(order.clone());
+            return;
+        }
+        List<String> choices = slot <= lastFixed ? fixed : moving;
+        for (String name : choices) {
+            boolean used = false;
+            for (int i = 1; i < slot; i++) {
+                used |= order[i].equals(name);
+            }
+            if (!used) {
+                order[slot] = name;
+                arrangements(order, slot + 1, lastFixed, fixed, moving,
+                             result);
+            }
+        }
+    }
+
+    /** The machine whose configuration I use. */
+    private final Machine _config;
+    /** The pool that runs searches. */
+    private final ForkJoinPool _pool;
+    /** Rotor orders searched. */
+    private List<String[]> _orders;
+    /** Number of rightmost rotors whose rings are searched. */
+    private int _ringSlots;
+    /** Plugboard cycles used for every key. */
+    private String _plugboard;
+    /** The plugboard of _plugboard. */
+    private Permutation _plugboardPerm;
+}
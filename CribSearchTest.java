@@ -0,0 +1,77 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static enigma.TestUtils.*;
+import static enigma.MachineTest.*;
+
+/** The suite of all JUnit tests for the CribSearch class.
+ *  @author Xuanyi Zhang
+ */
+public class CribSearchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Plugboard of the sample message. */
+    private static final String PLUGBOARD = "(HQ) (EX) (IP) (TR) (BY)";
+
+    @Test
+    public void testPlaceable() {
+        assertTrue(CribSearch.placeable("QVPQ SOK", "FROM", 0));
+        assertFalse(CribSearch.placeable("QVPQ SOK", "FROQ", 0));
+        assertFalse(CribSearch.placeable("QVPQ SOK", "FROM", 4));
+        assertEquals(List.of(1, 2, 4), CribSearch.offsets("QVPQSOK", "QVP"));
+    }
+
+    @Test
+    public void testRotorOrders() {
+        List<String[]> orders = CribSearch.rotorOrders(navalMachine());
+        assertEquals(2 * 2 * 8 * 7 * 6, orders.size());
+        for (String[] order : orders) {
+            assertTrue(order[1].equals("Beta") || order[1].equals("Gamma"));
+        }
+    }
+
+    @Test
+    public void testFindsSampleKey() {
+        CribSearch search = new CribSearch(navalMachine());
+        List<String[]> orders = new ArrayList<>();
+        orders.add(new String[] { "B", "Beta", "III", "IV", "I" });
+        orders.add(new String[] { "B", "Beta", "I", "II", "III" });
+        search.setOrders(orders);
+        search.setPlugboard(PLUGBOARD);
+        CribSearch.Result result =
+            search.search("QVPQS OKOIL PUBKJ ZPISF XDW", "HISSHOULDER", 4);
+        assertEquals(List.of("B Beta III IV I AXLE AAAA " + PLUGBOARD),
+                     result.keys());
+        assertEquals(2 * 26 * 26 * 26 * 26, result.candidates());
+        assertTrue(result.candidatesPerSecond() > 0);
+    }
+
+    @Test
+    public void testSearchesRings() {
+        Machine M = smallMachine(3);
+        M.insertRotors(new String[] { "B", "III", "I" });
+        M.setRings("AF");
+        M.setRotors("KW");
+        M.setPlugboard(new Permutation("", UPPER));
+        String ciphertext = M.convert("WETTERVORHERSAGEBISKAYA");
+        CribSearch search = new CribSearch(smallMachine(3));
+        search.setOrders(List.<String[]>of(new String[] { "B", "I", "III" },
+                                           new String[] { "B", "III", "I" }));
+        search.setRingSlots(1);
+        CribSearch.Result result =
+            search.search(ciphertext, "VORHERSAGE", 6);
+        assertTrue(result.keys().toString(),
+                   result.keys().contains("B III I KW AF"));
+        assertEquals(2 * 26 * 26 * 26, result.candidates());
+    }
+}
@@ -0,0 +1,246 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static enigma.EnigmaException.*;
+
+/** A long-running server that keeps one machine configuration loaded and
+ *  processes jobs submitted over a Unix domain socket, so that each job
+ *  avoids JVM startup and configuration parsing.  A job names an input
+ *  and an output file and is processed exactly as Main would process
+ *  them.  Jobs run concurrently, each on its own copy of the
+ *  configuration.
+ *
+ *  The protocol is one request per connection: the client sends the
+ *  input and output file names, each followed by a newline, and shuts
+ *  down its side of the connection.  The daemon replies with OK, or with
+ *  Error: followed by a message, followed by a newline.  A request must
+ *  arrive within a time limit and be at most MAX_REQUEST bytes long, so
+ *  that clients that never finish cannot tie up the daemon's threads.
+ *  @author Xuanyi Zhang
+ */
+final class Daemon {
+
+    /** A daemon for the machine configuration CONFIG, listening on the
+     *  socket file SOCKET, which is replaced if it already exists, and
+     *  waiting at most TIMEOUT milliseconds for each request.  Only the
+     *  daemon's user may connect, since jobs write files as that user:
+     *  the socket is bound inside a new directory that only that user
+     *  may enter, restricted, and only then moved to SOCKET. */
+    Daemon(Machine config, Path socket, long timeout) {
+        _config = config;
+        _socket = socket;
+        _timeout = timeout;
+        ServerSocketChannel server = null;
+        Path dir = null;
+        try {
+            dir = Files.createTempDirectory(
+                socket.toAbsolutePath().getParent(), ".enigma",
+                PosixFilePermissions.asFileAttribute(PRIVATE_DIR));
+            Path hidden = dir.resolve("socket");
+            server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            server.bind(UnixDomainSocketAddress.of(hidden));
+            Files.setPosixFilePermissions(hidden, OWNER_ONLY);
+            Files.move(hidden, socket, StandardCopyOption.ATOMIC_MOVE);
+            Files.delete(dir);
+        } catch (IOException | UnsupportedOperationException excp) {
+            try {
+                if (server != null) {
+                    server.close();
+                }
+                if (dir != null) {
+                    Files.deleteIfExists(dir.resolve("socket"));
+                    Files.deleteIfExists(dir);
+                }
+            } catch (IOException ignored) {
+                /* Report the original failure. */
+            }
+            throw error("could not listen on %s", socket);
+        }
+        _server = server;
+        _workers = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors());
+    }
+
+    /** A daemon for CONFIG listening on SOCKET, waiting at most
+     *  REQUEST_TIMEOUT milliseconds for each request. */
+    Daemon(Machine config, Path socket) {
+        this(config, socket, REQUEST_TIMEOUT);
+    }
+
+    /** Accept and process jobs until I am closed. */
+    void serve() {
+        try {
+            while (true) {
+                SocketChannel client = _server.accept();
+                _workers.execute(() -> handle(client));
+            }
+        } catch (ClosedChannelException excp) {
+            return;
+        } catch (IOException excp) {
+            throw error("could not accept on %s", _socket);
+        } finally {
+            close();
+        }
+    }
+
+    /** Stop accepting jobs, let those already accepted finish, and remove
+     *  my socket file. */
+    void close() {
+        try {
+            _server.close();
+            Files.deleteIfExists(_socket);
+        } catch (IOException excp) {
+            throw error("could not remove %s", _socket);
+        } finally {
+            _workers.shutdown();
+        }
+    }
+
+    /** Process the job requested on CLIENT and send the reply. */
+    private void handle(SocketChannel client) {
+        try (client) {
+            String reply;
+            try {
+                String[] request = request(client).split("\n");
+                if (request.length != 2) {
+                    throw error("bad request");
+                }
+                Main.runJob(_config, request[0], request[1]);
+                reply = OK;
+            } catch (RuntimeException excp) {
+                reply = "Error: " + (excp.getMessage() == null
+                                     ? excp.toString() : excp.getMessage());
+            }
+            send(client, reply + "\n");
+        } catch (IOException excp) {
+            return;
+        }
+    }
+
+    /** Return the request read from CLIENT up to end of input.  Throws
+     *  an EnigmaException if it is longer than MAX_REQUEST bytes or does
+     *  not end within my time limit.  Leaves CLIENT in blocking mode. */
+    private String request(SocketChannel client) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(MAX_REQUEST + 1);
+        long deadline = System.nanoTime() + _timeout * 1_000_000;
+        client.configureBlocking(false);
+        try (Selector selector = Selector.open()) {
+            client.register(selector, SelectionKey.OP_READ);
+            while (client.read(buf) >= 0) {
+                if (!buf.hasRemaining()) {
+                    throw error("request too long");
+                }
+                long left = (deadline - System.nanoTime()) / 1_000_000;
+                if (left <= 0) {
+                    throw error("request timed out");
+                }
+                selector.select(left);
+                selector.selectedKeys().clear();
+            }
+        } finally {
+            client.configureBlocking(true);
+        }
+        return new String(buf.array(), 0, buf.position(),
+                          StandardCharsets.UTF_8);
+    }
+
+    /** Submit a job converting the file named INPUT into the file named
+     *  OUTPUT to the daemon listening on SOCKET, and wait for it to
+     *  finish.  Throws an EnigmaException carrying the daemon's message
+     *  if the job fails. */
+    static void submit(Path socket, String input, String output) {
+        String reply;
+        try (SocketChannel daemon =
+                 SocketChannel.open(UnixDomainSocketAddress.of(socket))) {
+            send(daemon, Paths.get(input).toAbsolutePath() + "\n"
+                 + Paths.get(output).toAbsolutePath() + "\n");
+            daemon.shutdownOutput();
+            reply = receive(daemon).strip();
+        } catch (IOException excp) {
+            throw error("could not reach daemon at %s", socket);
+        }
+        if (reply.startsWith("Error: ")) {
+            throw error("%s", reply.substring("Error: ".length()));
+        } else if (!reply.equals(OK)) {
+            throw error("no reply from daemon at %s", socket);
+        }
+    }
+
+    /** Write MSG to CHANNEL. */
+    private static void send(SocketChannel channel, String msg)
+        throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(msg.getBytes(StandardCharsets.UTF_8));
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+    }
+
+    /** Return everything read from CHANNEL up to end of input. */
+    private static String receive(SocketChannel channel) throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+        while (channel.read(buf) >= 0) {
+            result.write(buf.array(), 0, buf.position());
+            buf.clear();
+        }
+        return result.toString(StandardCharsets.UTF_8);
+    }
+
+    /** Configuration that each job copies. */
+    private final Machine _config;
+
+    /** Socket file I listen on. */
+    private final Path _socket;
+
+    /** Channel accepting job connections. */
+    private final ServerSocketChannel _server;
+
+    /** Threads processing accepted jobs. */
+    private final ExecutorService _workers;
+
+    /** Time limit in milliseconds for receiving a request. */
+    private final long _timeout;
+
+    /** Permissions of the socket file: read and write for its owner. */
+    private static final Set<PosixFilePermission> OWNER_ONLY =
+        PosixFilePermissions.fromString("rw-------");
+
+    /** Permissions of the directory the socket is bound in: only its
+     *  owner may enter it. */
+    private static final Set<PosixFilePermission> PRIVATE_DIR =
+        PosixFilePermissions.fromString("rwx------");
+
+    /** Default time limit in milliseconds for receiving a request. */
+    static final long REQUEST_TIMEOUT = 10_000;
+
+    /** Size in bytes of the longest request accepted. */
+    static final int MAX_REQUEST = 1 << 16;
+
+    /** Reply to a job that succeeded. */
+    private static final String OK = "OK";
+
+    /** Size in bytes of the buffer for reading requests and replies. */
+    private static final int BUFFER_SIZE = 1 << 12;
+}
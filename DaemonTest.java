@@ -0,0 +1,130 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+
+import static enigma.MachineTest.*;
+
+/** The suite of all JUnit tests for the Daemon class.
+ *  @author Xuanyi Zhang
+ */
+public class DaemonTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Return everything read from CLIENT up to end of input. */
+    private static String readAll(SocketChannel client) throws IOException {
+        ByteBuffer reply = ByteBuffer.allocate(256);
+        while (client.read(reply) >= 0) {
+            continue;
+        }
+        return new String(reply.array(), 0, reply.position(),
+                          StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testSubmit() throws IOException, InterruptedException {
+        Path dir = Files.createTempDirectory("enigma");
+        Path socket = dir.resolve("daemon.sock");
+        Path input = dir.resolve("in");
+        Path output = dir.resolve("out");
+        Daemon daemon = new Daemon(navalMachine(), socket);
+        Thread server = new Thread(daemon::serve);
+        server.start();
+        try {
+            Files.writeString(input, "* B Beta III IV I AXLE (HQ) (EX) "
+                              + "(IP) (TR) (BY)\nFROM HIS SHOULDER "
+                              + "HIAWATHA\n");
+            for (int i = 0; i < 3; i += 1) {
+                Daemon.submit(socket, input.toString(), output.toString());
+                assertEquals("QVPQS OKOIL PUBKJ ZPISF XDW"
+                             + System.lineSeparator(),
+                             Files.readString(output));
+            }
+            assertEquals(PosixFilePermissions.fromString("rw-------"),
+                         Files.getPosixFilePermissions(socket));
+            try (SocketChannel client = SocketChannel.open(
+                     UnixDomainSocketAddress.of(socket))) {
+                client.write(ByteBuffer.wrap(
+                    "bad\0name\nout\n".getBytes(StandardCharsets.UTF_8)));
+                client.shutdownOutput();
+                assertTrue(readAll(client).startsWith("Error: "));
+            }
+            Files.writeString(input, "FROM HIS SHOULDER\n");
+            try {
+                Daemon.submit(socket, input.toString(), output.toString());
+                fail("job without settings succeeded");
+            } catch (EnigmaException excp) {
+                assertEquals("input needs to start with a setting",
+                             excp.getMessage());
+            }
+        } finally {
+            daemon.close();
+            server.join();
+            Files.deleteIfExists(input);
+            Files.deleteIfExists(output);
+            Files.delete(dir);
+        }
+        assertFalse(Files.exists(socket));
+    }
+
+    @Test
+    public void testStalledClients() throws IOException,
+                                            InterruptedException {
+        Path dir = Files.createTempDirectory("enigma");
+        Path socket = dir.resolve("daemon.sock");
+        Path input = dir.resolve("in");
+        Path output = dir.resolve("out");
+        Daemon daemon = new Daemon(navalMachine(), socket, 300);
+        Thread server = new Thread(daemon::serve);
+        server.start();
+        SocketChannel[] stalled =
+            new SocketChannel[Runtime.getRuntime().availableProcessors()];
+        try {
+            assertEquals(1, dir.toFile().list().length);
+            for (int i = 0; i < stalled.length; i += 1) {
+                stalled[i] = SocketChannel.open(
+                    UnixDomainSocketAddress.of(socket));
+            }
+            Files.writeString(input, "* B Beta III IV I AXLE (HQ) (EX) "
+                              + "(IP) (TR) (BY)\nFROM HIS SHOULDER "
+                              + "HIAWATHA\n");
+            Daemon.submit(socket, input.toString(), output.toString());
+            assertEquals("QVPQS OKOIL PUBKJ ZPISF XDW"
+                         + System.lineSeparator(),
+                         Files.readString(output));
+            assertEquals("Error: request timed out\n",
+                         readAll(stalled[0]));
+            try (SocketChannel client = SocketChannel.open(
+                     UnixDomainSocketAddress.of(socket))) {
+                client.write(ByteBuffer.allocate(Daemon.MAX_REQUEST + 1));
+                client.shutdownOutput();
+                assertEquals("Error: request too long\n", readAll(client));
+            }
+        } finally {
+            for (SocketChannel client : stalled) {
+                if (client != null) {
+                    client.close();
+                }
+            }
+            daemon.close();
+            server.join();
+            Files.deleteIfExists(input);
+            Files.deleteIfExists(output);
+            Files.delete(dir);
+        }
+    }
+}
@@ -0,0 +1,380 @@
+package enigma;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static enigma.EnigmaException.*;
+
+/** A TCP server on the loopback interface that converts messages for
+ *  many concurrent sessions over one machine configuration.  Each
+ *  connection sends a settings line (as in an input file, starting with
+ *  '*') and then message lines, and receives one line for each message
+ *  line: its conversion, in groups of five as Main prints it.  A later
+ *  settings line starts over with new settings.  Errors are reported as a
+ *  line starting with Error: and close the connection.  Lines are UTF-8
+ *  and end with '\n' or "\r\n".
+ *
+ *  As for BatchEngine, sessions never inherit ring settings or rotor
+ *  positions: a settings line without ring settings uses ring setting 0.
+ *  Settings are compiled once into a CompiledMachine shared by every
+ *  session that uses them, and each session holds only a Cursor, so the
+ *  cost of an idle session is its buffers.  Connections are multiplexed
+ *  over a few event-loop threads rather than a thread apiece, which
+ *  allows tens of thousands of them at once.
+ *  @author Xuanyi Zhang
+ */
+final class EncryptionServer {
+
+    /** A server for the machine configuration CONFIG (its alphabet,
+     *  slots, pawls and available rotors) listening on loopback port PORT
+     *  (any free port if 0), with LOOPS event-loop threads. */
+    EncryptionServer(Machine config, int port, int loops) {
+        if (loops < 1) {
+            throw error("need at least one event loop");
+        }
+        _config = config;
+        _compiled = new LruCache<>(CACHE_CAPACITY, CompiledMachine::footprint);
+        try {
+            _server = ServerSocketChannel.open();
+            _server.bind(new InetSocketAddress(
+                InetAddress.getLoopbackAddress(), port), BACKLOG);
+            _loops = new EventLoop[loops];
+            for (int i = 0; i < loops; i++) {
+                _loops[i] = new EventLoop();
+            }
+        } catch (IOException excp) {
+            throw error("could not listen on port %d", port);
+        }
+    }
+
+    /** A server for CONFIG listening on loopback port PORT, with one
+     *  event loop per available processor. */
+    EncryptionServer(Machine config, int port) {
+        this(config, port, Runtime.getRuntime().availableProcessors());
+    }
+
+    /** Return the port I listen on. */
+    int port() {
+        try {
+            return ((InetSocketAddress) _server.getLocalAddress()).getPort();
+        } catch (IOException excp) {
+            throw error("server is closed");
+        }
+    }
+
+    /** Return the cache of compiled settings lines. */
+    LruCache<String, CompiledMachine> compiledCache() {
+        return _compiled;
+    }
+
+    /** Accept and serve connections until I am closed. */
+    void serve() {
+        Thread[] threads = new Thread[_loops.length];
+        for (int i = 0; i < _loops.length; i++) {
+            threads[i] = new Thread(_loops[i], "enigma-loop-" + i);
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+        try {
+            for (int next = 0;; next = (next + 1) % _loops.length) {
+                _loops[next].add(_server.accept());
+            }
+        } catch (ClosedChannelException excp) {
+            return;
+        } catch (IOException excp) {
+            throw error("could not accept connection");
+        } finally {
+            close();
+        }
+    }
+
+    /** Stop accepting connections and close all open ones. */
+    void close() {
+        try {
+            _server.close();
+        } catch (IOException excp) {
+            throw error("could not close server");
+        } finally {
+            for (EventLoop loop : _loops) {
+                loop.close();
+            }
+        }
+    }
+
+    /** Return the message to report for the failure EXCP. */
+    private static String message(RuntimeException excp) {
+        return excp.getMessage() == null ? excp.toString()
+            : excp.getMessage();
+    }
+
+    /** Close RESOURCE, ignoring failures, which leave nothing to undo. */
+    private static void closeQuietly(Closeable resource) {
+        try {
+            resource.close();
+        } catch (IOException excp) {
+            return;
+        }
+    }
+
+    /** A thread serving the connections assigned to it. */
+    private class EventLoop implements Runnable {
+
+        /** An event loop with no connections. */
+        EventLoop() throws IOException {
+            _selector = Selector.open();
+        }
+
+        /** Start serving CLIENT, or close it if I have stopped. */
+        void add(SocketChannel client) {
+            _pending.add(client);
+            _selector.wakeup();
+            if (_closed) {
+                closePending();
+            }
+        }
+
+        /** Make me close my selector and all my connections. */
+        void close() {
+            _closed = true;
+            _selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!_closed) {
+                    _selector.select();
+                    for (SocketChannel client = _pending.poll();
+                         client != null; client = _pending.poll()) {
+                        register(client);
+                    }
+                    Iterator<SelectionKey> ready =
+                        _selector.selectedKeys().iterator();
+                    while (ready.hasNext()) {
+                        SelectionKey key = ready.next();
+                        ready.remove();
+                        ((Session) key.attachment()).ready();
+                    }
+                }
+            } catch (IOException excp) {
+                return;
+            } finally {
+                _closed = true;
+                for (SelectionKey key : _selector.keys()) {
+                    ((Session) key.attachment()).close();
+                }
+                closePending();
+                closeQuietly(_selector);
+            }
+        }
+
+        /** Close the connections accepted for me but not registered. */
+        private void closePending() {
+            for (SocketChannel client = _pending.poll(); client != null;
+                 client = _pending.poll()) {
+                closeQuietly(client);
+            }
+        }
+
+        /** Start watching CLIENT for input, or close it if that
+         *  fails. */
+        private void register(SocketChannel client) {
+            try {
+                client.configureBlocking(false);
+                SelectionKey key =
+                    client.register(_selector, SelectionKey.OP_READ);
+                key.attach(new Session(client, key));
+            } catch (IOException excp) {
+                closeQuietly(client);
+            }
+        }
+
+        /** Selects my connections that are ready. */
+        private final Selector _selector;
+        /** Connections accepted for me but not yet registered. */
+        private final Queue<SocketChannel> _pending =
+            new ConcurrentLinkedQueue<>();
+        /** True once I have been asked to close. */
+        private volatile boolean _closed;
+    }
+
+    /** The state of one connection. */
+    private class Session {
+
+        /** The session on CLIENT, registered under KEY. */
+        Session(SocketChannel client, SelectionKey key) {
+            _client = client;
+            _key = key;
+        }
+
+        /** Read, process or write whatever my connection is ready for,
+         *  closing it on end of input or failure. */
+        void ready() {
+            try {
+                if (_key.isWritable()) {
+                    flush();
+                } else if (_key.isReadable()) {
+                    if (_client.read(_in) < 0) {
+                        _closing = true;
+                        if (_in.position() > 0) {
+                            processLine(0, _in.position());
+                            _in.clear();
+                        }
+                    } else {
+                        processLines();
+                    }
+                    flush();
+                }
+            } catch (IOException excp) {
+                close();
+            } catch (RuntimeException excp) {
+                try {
+                    fail(message(excp));
+                    flush();
+                } catch (IOException | RuntimeException again) {
+                    close();
+                }
+            }
+        }
+
+        /** Process every complete line in _in, keeping any partial line
+         *  at the start of _in. */
+        private void processLines() {
+            int start = 0;
+            for (int i = 0; i < _in.position() && !_closing; i++) {
+                if (_in.get(i) == '\n') {
+                    processLine(start, i);
+                    start = i + 1;
+                }
+            }
+            _in.flip().position(start);
+            _in.compact();
+            if (!_in.hasRemaining()) {
+                if (_in.capacity() >= MAX_LINE) {
+                    fail("line too long");
+                } else {
+                    _in = ByteBuffer.allocate(2 * _in.capacity())
+                        .put(_in.flip());
+                }
+            }
+        }
+
+        /** Process the line in _in from START to END, excluding any
+         *  carriage return before END. */
+        private void processLine(int start, int end) {
+            if (end > start && _in.get(end - 1) == '\r') {
+                end -= 1;
+            }
+            String line = new String(_in.array(), start, end - start,
+                                     StandardCharsets.UTF_8);
+            try {
+                if (line.strip().startsWith("*")) {
+                    _cursor = _compiled.get(
+                        line.strip().substring(1),
+                        k -> CompiledMachine.compile(_config, k)).cursor();
+                } else if (_cursor == null) {
+                    throw error("input needs to start with a setting");
+                } else {
+                    String msg = _cursor.convert(line);
+                    if (_line.length < msg.length() + msg.length() / 5) {
+                        _line = new char[msg.length() + msg.length() / 5];
+                    }
+                    int len = Main.groupMessage(msg, _line);
+                    write(CharBuffer.wrap(_line, 0, len) + "\n");
+                }
+            } catch (RuntimeException excp) {
+                fail(message(excp));
+            }
+        }
+
+        /** Reply with the error message MSG and close the connection once
+         *  it has been sent. */
+        private void fail(String msg) {
+            write("Error: " + msg + "\n");
+            _closing = true;
+        }
+
+        /** Queue TEXT to be sent. */
+        private void write(String text) {
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            if (_out.remaining() < bytes.length) {
+                ByteBuffer bigger = ByteBuffer.allocate(
+                    Math.max(2 * _out.capacity(),
+                             _out.position() + bytes.length));
+                _out = bigger.put(_out.flip());
+            }
+            _out.put(bytes);
+        }
+
+        /** Send as much queued output as possible.  Stop reading while
+         *  output is left over, so that a client that does not read its
+         *  replies cannot make me buffer without limit. */
+        private void flush() throws IOException {
+            _out.flip();
+            _client.write(_out);
+            _out.compact();
+            if (_out.position() > 0) {
+                _key.interestOps(SelectionKey.OP_WRITE);
+            } else if (_closing) {
+                close();
+            } else {
+                _key.interestOps(SelectionKey.OP_READ);
+            }
+        }
+
+        /** Close my connection. */
+        void close() {
+            _key.cancel();
+            closeQuietly(_client);
+        }
+
+        /** My connection. */
+        private final SocketChannel _client;
+        /** The registration of _client with its event loop. */
+        private final SelectionKey _key;
+        /** Bytes received but not yet processed. */
+        private ByteBuffer _in = ByteBuffer.allocate(BUFFER_SIZE);
+        /** Bytes to be sent, starting at 0. */
+        private ByteBuffer _out = ByteBuffer.allocate(BUFFER_SIZE);
+        /** Buffer for formatting replies. */
+        private char[] _line = new char[0];
+        /** The rotor positions of my current settings, or null before the
+         *  first settings line. */
+        private CompiledMachine.Cursor _cursor;
+        /** True iff the connection closes once _out has been sent. */
+        private boolean _closing;
+    }
+
+    /** The machine whose configuration I use. */
+    private final Machine _config;
+    /** Compiled settings lines shared by all sessions. */
+    private final LruCache<String, CompiledMachine> _compiled;
+    /** Channel accepting connections. */
+    private final ServerSocketChannel _server;
+    /** The event loops serving connections. */
+    private final EventLoop[] _loops;
+
+    /** Capacity in bytes of the cache of compiled settings. */
+    private static final long CACHE_CAPACITY = 1 << 26;
+    /** Maximum number of pending connections. */
+    private static final int BACKLOG = 1 << 12;
+    /** Initial size in bytes of each session's buffers. */
+    private static final int BUFFER_SIZE = 1 << 10;
+    /** Size in bytes of the largest line accepted. */
+    private static final int MAX_LINE = 1 << 24;
+}
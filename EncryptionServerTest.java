@@ -0,0 +1,106 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import static enigma.MachineTest.*;
+
+/** The suite of all JUnit tests for the EncryptionServer class.
+ *  @author Xuanyi Zhang
+ */
+public class EncryptionServerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Settings line of the sample message. */
+    static final String SAMPLE =
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)";
+
+    /** Return a connection to SERVER. */
+    private static Socket connect(EncryptionServer server)
+        throws IOException {
+        return new Socket(InetAddress.getLoopbackAddress(), server.port());
+    }
+
+    /** Return a reader of the replies on SOCKET. */
+    private static BufferedReader replies(Socket socket) throws IOException {
+        return new BufferedReader(new InputStreamReader(
+            socket.getInputStream(), StandardCharsets.UTF_8));
+    }
+
+    /** Return a writer of requests on SOCKET, flushing after each line. */
+    private static PrintWriter requests(Socket socket) throws IOException {
+        return new PrintWriter(socket.getOutputStream(), true,
+                               StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testSessions() throws IOException, InterruptedException {
+        EncryptionServer server = new EncryptionServer(navalMachine(), 0, 2);
+        Thread serving = new Thread(server::serve);
+        serving.start();
+        Socket[] sockets = new Socket[3];
+        try {
+            for (int i = 0; i < sockets.length; i += 1) {
+                sockets[i] = connect(server);
+                PrintWriter out = requests(sockets[i]);
+                out.print(SAMPLE + "\r\nFROM HIS\r\n");
+                out.flush();
+            }
+            for (Socket socket : sockets) {
+                PrintWriter out = requests(socket);
+                BufferedReader in = replies(socket);
+                assertEquals("QVPQS OK", in.readLine());
+                out.println("SHOULDER HIAWATHA");
+                assertEquals("OILPU BKJZP ISFXD W", in.readLine());
+                out.println(SAMPLE);
+                out.println("FROMHISSHOULDERHIAWATHA");
+                assertEquals("QVPQS OKOIL PUBKJ ZPISF XDW", in.readLine());
+            }
+            assertEquals(1, server.compiledCache().size());
+        } finally {
+            for (Socket socket : sockets) {
+                if (socket != null) {
+                    socket.close();
+                }
+            }
+            server.close();
+            serving.join();
+        }
+    }
+
+    @Test
+    public void testErrors() throws IOException, InterruptedException {
+        EncryptionServer server = new EncryptionServer(navalMachine(), 0, 1);
+        Thread serving = new Thread(server::serve);
+        serving.start();
+        try (Socket first = connect(server);
+             Socket second = connect(server)) {
+            requests(first).println("FROM HIS SHOULDER");
+            BufferedReader in = replies(first);
+            assertEquals("Error: input needs to start with a setting",
+                         in.readLine());
+            assertNull(in.readLine());
+            requests(second).println(SAMPLE);
+            requests(second).println("from his shoulder");
+            in = replies(second);
+            assertEquals("Error: bad message", in.readLine());
+            assertNull(in.readLine());
+        } finally {
+            server.close();
+            serving.join();
+        }
+    }
+}
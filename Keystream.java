@@ -0,0 +1,177 @@
+package enigma;
+
+import java.util.HashMap;
+import java.util.Objects;
+
+/** The substitutions made at successive positions by a CompiledMachine
+ *  from its starting positions, precomputed so that converting a message
+ *  costs one table lookup per letter.  Row T of the table is the whole
+ *  permutation applied to the T-th letter of a message.
+ *
+ *  Since the rotor positions follow a fixed sequence, the rows repeat:
+ *  after a tail of tail() positions (usually none) they cycle with
+ *  period period(), at most 26 * 25 * 26 for three moving rotors over 26
+ *  letters.  Only one cycle is stored.  If no cycle is found within the
+ *  row limit, letters past the last row are converted by a cursor
+ *  instead.  A Keystream is immutable and safe to share between
+ *  threads.
+ *  @author Xuanyi Zhang
+ */
+final class Keystream {
+
+    /** The keystream of MACHINE from its starting positions, with at most
+     *  MAXROWS rows. */
+    Keystream(CompiledMachine machine, int maxRows) {
+        _alphabet = machine.alphabet();
+        int size = _alphabet.size();
+        if (size > MAX_SIZE) {
+            throw new EnigmaException("alphabet too large for keystream");
+        }
+        CompiledMachine.Cursor cursor = machine.cursor();
+        boolean track = trackable(machine);
+        HashMap<Long, Integer> seen = new HashMap<>();
+        byte[][] rows = new byte[Math.min(maxRows, INITIAL_ROWS)][];
+        int n = 0;
+        int tail = -1;
+        while (n < maxRows) {
+            cursor.step();
+            if (track) {
+                Integer first = seen.putIfAbsent(state(cursor), n);
+                if (first != null) {
+                    tail = first;
+                    break;
+                }
+            }
+            if (n == rows.length) {
+                byte[][] bigger = new byte[Math.min(maxRows, 2 * n)][];
+                System.arraycopy(rows, 0, bigger, 0, n);
+                rows = bigger;
+            }
+            rows[n] = new byte[size];
+            for (int c = 0; c < size; c++) {
+                rows[n][c] = (byte) cursor.substitute(c);
+            }
+            n += 1;
+        }
+        if (n < rows.length) {
+            byte[][] exact = new byte[n][];
+            System.arraycopy(rows, 0, exact, 0, n);
+            rows = exact;
+        }
+        _rows = rows;
+        if (tail >= 0) {
+            _tail = tail;
+            _period = n - tail;
+            _end = null;
+        } else {
+            _tail = n;
+            _period = 0;
+            _end = cursor;
+        }
+    }
+
+    /** The keystream of MACHINE with at most MAX_ROWS rows. */
+    Keystream(CompiledMachine machine) {
+        this(machine, MAX_ROWS);
+    }
+
+    /** Return the number of positions before the rows start to cycle. */
+    int tail() {
+        return _tail;
+    }
+
+    /** Return the number of positions in one cycle of rows, or 0 if no
+     *  cycle was found within the row limit. */
+    int period() {
+        return _period;
+    }
+
+    /** Return the approximate number of bytes I occupy. */
+    long footprint() {
+        return 64 + (long) _rows.length * (16 + _alphabet.size());
+    }
+
+    /** Returns the encoding/decoding of MSG, as for
+     *  CompiledMachine.Cursor.convert(String) on a new cursor. */
+    String convert(String msg) {
+        char[] msgchar = msg.toCharArray();
+        convert(msgchar, 0, msgchar.length, msgchar, 0);
+        return new String(msgchar);
+    }
+
+    /** Convert the LEN characters of SRC starting at OFF into DST
+     *  starting at DSTOFF, as CompiledMachine.Cursor.convert(char[], int,
+     *  int, char[], int) would on a new cursor. */
+    void convert(char[] src, int off, int len, char[] dst, int dstOff) {
+        Objects.checkFromIndexSize(off, len, src.length);
+        Objects.checkFromIndexSize(dstOff, len, dst.length);
+        for (int i = off; i < off + len; i++) {
+            if (!_alphabet.contains(src[i]) && src[i] != ' ') {
+                throw new EnigmaException("bad message");
+            }
+        }
+        byte[][] rows = _rows;
+        CompiledMachine.Cursor beyond = null;
+        int t = 0;
+        for (int i = 0; i < len; i++) {
+            char ch = src[off + i];
+            if (ch == ' ') {
+                dst[dstOff + i] = ' ';
+                continue;
+            }
+            int c = _alphabet.toInt(ch);
+            if (t < rows.length) {
+                c = rows[t][c] & 0xff;
+                t += 1;
+                if (t == rows.length && _period > 0) {
+                    t = _tail;
+                }
+            } else {
+                if (beyond == null) {
+                    beyond = _end.copy();
+                }
+                c = beyond.convert(c);
+            }
+            dst[dstOff + i] = _alphabet.toChar(c);
+        }
+    }
+
+    /** Return true iff the positions of MACHINE's rotors can be packed
+     *  into a long by state. */
+    private static boolean trackable(CompiledMachine machine) {
+        int bits = 64 - Long.numberOfLeadingZeros(machine.alphabet().size());
+        return bits * (machine.numRotors() - 1) < Long.SIZE - 1;
+    }
+
+    /** Return the positions of the rotors of CURSOR (not counting the
+     *  reflector) packed into a long. */
+    private static long state(CompiledMachine.Cursor cursor) {
+        long state = 0;
+        int size = cursor.machine().alphabet().size();
+        for (int slot = 1; slot < cursor.machine().numRotors(); slot++) {
+            state = state * size + cursor.setting(slot);
+        }
+        return state;
+    }
+
+    /** My alphabet. */
+    private final Alphabet _alphabet;
+    /** Row T is the substitution made at position T. */
+    private final byte[][] _rows;
+    /** Number of rows before the cycle, or the number of rows if there is
+     *  no cycle. */
+    private final int _tail;
+    /** Length of the cycle, or 0 if there is none. */
+    private final int _period;
+    /** A cursor just before the position after the last row, if there is
+     *  no cycle; otherwise null. */
+    private final CompiledMachine.Cursor _end;
+
+    /** Largest alphabet whose indices fit in the bytes of a row. */
+    static final int MAX_SIZE = 256;
+    /** Default limit on the number of rows: enough for the period of
+     *  three moving rotors over 26 letters, 26 * 25 * 26. */
+    static final int MAX_ROWS = 1 << 15;
+    /** Number of rows allocated at first. */
+    private static final int INITIAL_ROWS = 1 << 10;
+}
@@ -0,0 +1,67 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import static enigma.MachineTest.*;
+import static enigma.CompiledMachineTest.randomMessage;
+
+/** The suite of all JUnit tests for the Keystream class.
+ *  @author Xuanyi Zhang
+ */
+public class KeystreamTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Return the compiled machine of the sample message. */
+    private static CompiledMachine sample() {
+        Machine M = navalMachine();
+        sampleSettings(M);
+        return new CompiledMachine(M);
+    }
+
+    @Test
+    public void testSampleMessage() {
+        Keystream keystream = new Keystream(sample());
+        assertEquals(0, keystream.tail());
+        assertEquals(26 * 25 * 26, keystream.period());
+        assertEquals("QVPQ SOK OILPUBKJ ZPISFXDW",
+                     keystream.convert("FROM HIS SHOULDER HIAWATHA"));
+    }
+
+    @Test
+    public void testPastOnePeriod() {
+        CompiledMachine machine = sample();
+        Keystream keystream = new Keystream(machine);
+        String msg = randomMessage(new Random(61), 3 * keystream.period());
+        assertEquals(machine.cursor().convert(msg), keystream.convert(msg));
+    }
+
+    @Test
+    public void testUnreachableStart() {
+        Machine M = navalMachine();
+        sampleSettings(M);
+        M.setRotors("AAJA");
+        CompiledMachine machine = new CompiledMachine(M);
+        Keystream keystream = new Keystream(machine);
+        assertEquals(26 * 25 * 26, keystream.period());
+        String msg = randomMessage(new Random(61), keystream.period() + 100);
+        assertEquals(machine.cursor().convert(msg), keystream.convert(msg));
+    }
+
+    @Test
+    public void testRowLimit() {
+        CompiledMachine machine = sample();
+        Keystream keystream = new Keystream(machine, 100);
+        assertEquals(0, keystream.period());
+        String msg = randomMessage(new Random(61), 1000);
+        assertEquals(machine.cursor().convert(msg), keystream.convert(msg));
+        assertEquals(machine.cursor().convert(msg), keystream.convert(msg));
+    }
+}
@@ -0,0 +1,184 @@
+package enigma;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/** A bounded least-recently-used cache.  Each value has a weight (such as
+ *  an estimate of its size in bytes), and the least recently used entries
+ *  are evicted whenever the total weight exceeds a fixed capacity.  Keeps
+ *  counts of hits, misses and evictions.
+ *
+ *  The cache is safe to share between threads.  Lookups that hit take no
+ *  lock.  A missing value is computed outside any lock, once: other
+ *  threads asking for the same key wait for it, and threads asking for
+ *  other keys do not.  Only accounting for a newly cached value, and any
+ *  evictions it causes, is done under a lock.  So that hits need not
+ *  reorder anything, cached entries are queued in the order they were
+ *  cached, and each hit just stamps its entry with the time.  Eviction
+ *  takes entries from the head of the queue, sending any used since it
+ *  was queued to the tail instead of evicting it.  Each such requeue
+ *  follows a hit, so eviction costs constant amortized time.
+ *  @author Xuanyi Zhang
+ */
+class LruCache<K, V> {
+
+    /** An empty cache holding values of total weight at most CAPACITY,
+     *  where the weight of each value is given by WEIGHER. */
+    LruCache(long capacity, ToLongFunction<V> weigher) {
+        _capacity = capacity;
+        _weigher = weigher;
+    }
+
+    /** Return the value cached for KEY, first computing it with LOADER and
+     *  caching it if it is absent.  A value heavier than the whole
+     *  capacity is returned but not cached.  If LOADER throws, nothing is
+     *  cached and every caller waiting for KEY gets the exception. */
+    V get(K key, Function<K, V> loader) {
+        Entry<V> entry = _entries.get(key);
+        if (entry == null) {
+            Entry<V> mine = new Entry<>();
+            entry = _entries.putIfAbsent(key, mine);
+            if (entry == null) {
+                return load(key, mine, loader);
+            }
+        }
+        _hits.incrementAndGet();
+        entry._used = _clock.incrementAndGet();
+        try {
+            return entry._value.join();
+        } catch (CompletionException excp) {
+            if (excp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excp.getCause();
+            }
+            throw excp;
+        }
+    }
+
+    /** Compute the value for KEY with LOADER into ENTRY, which I have just
+     *  added, account for it, and return it. */
+    private V load(K key, Entry<V> entry, Function<K, V> loader) {
+        _misses.incrementAndGet();
+        entry._used = _clock.incrementAndGet();
+        V value;
+        try {
+            value = loader.apply(key);
+        } catch (RuntimeException | Error excp) {
+            _entries.remove(key, entry);
+            entry._value.completeExceptionally(excp);
+            throw excp;
+        }
+        entry._value.complete(value);
+        long weight = _weigher.applyAsLong(value);
+        if (weight > _capacity) {
+            _entries.remove(key, entry);
+            return value;
+        }
+        synchronized (this) {
+            entry._weight = weight;
+            entry._queued = entry._used;
+            _queue.put(key, entry);
+            _weight += weight;
+            while (_weight > _capacity) {
+                evictEldest();
+            }
+        }
+        return value;
+    }
+
+    /** Remove the entry nearest the head of _queue that has not been
+     *  used since it was queued, first moving those that have to the
+     *  tail.  Call only while holding my lock. */
+    private void evictEldest() {
+        while (true) {
+            Iterator<Map.Entry<K, Entry<V>>> eldest =
+                _queue.entrySet().iterator();
+            Map.Entry<K, Entry<V>> e = eldest.next();
+            Entry<V> entry = e.getValue();
+            eldest.remove();
+            long used = entry._used;
+            if (used > entry._queued) {
+                entry._queued = used;
+                _queue.put(e.getKey(), entry);
+            } else {
+                _entries.remove(e.getKey(), entry);
+                _weight -= entry._weight;
+                _evictions += 1;
+                return;
+            }
+        }
+    }
+
+    /** Return the number of entries cached, counting those being
+     *  computed. */
+    int size() {
+        return _entries.size();
+    }
+
+    /** Return the total weight of the entries cached. */
+    synchronized long weight() {
+        return _weight;
+    }
+
+    /** Return the number of lookups that found their key. */
+    long hits() {
+        return _hits.get();
+    }
+
+    /** Return the number of lookups that had to compute their value. */
+    long misses() {
+        return _misses.get();
+    }
+
+    /** Return the number of entries evicted to stay within capacity. */
+    synchronized long evictions() {
+        return _evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d entries, weight %d/%d, %d hits, %d misses,"
+                             + " %d evictions", _entries.size(), _weight,
+                             _capacity, hits(), misses(), _evictions);
+    }
+
+    /** A cached value, possibly still being computed. */
+    private static final class Entry<V> {
+        /** The value, completed once computed. */
+        private final CompletableFuture<V> _value = new CompletableFuture<>();
+        /** The time of the last lookup, from _clock. */
+        private volatile long _used;
+        /** The weight of the value, once accounted for. */
+        private long _weight;
+        /** The value of _used when the entry was last put on the cache's
+         *  queue.  Guarded by the cache's lock. */
+        private long _queued;
+    }
+
+    /** Largest total weight of cached values. */
+    private final long _capacity;
+    /** Gives the weight of each value. */
+    private final ToLongFunction<V> _weigher;
+    /** The cached entries. */
+    private final ConcurrentHashMap<K, Entry<V>> _entries =
+        new ConcurrentHashMap<>();
+    /** The entries whose values have been computed and counted in
+     *  _weight, in the order they were queued.  Guarded by my lock. */
+    private final LinkedHashMap<K, Entry<V>> _queue = new LinkedHashMap<>();
+    /** Source of lookup times, increasing. */
+    private final AtomicLong _clock = new AtomicLong();
+    /** Total weight of the values in _queue.  Guarded by my
+     *  lock. */
+    private long _weight;
+    /** Counts of hits and misses. */
+    private final AtomicLong _hits = new AtomicLong(),
+        _misses = new AtomicLong();
+    /** Count of evictions.  Guarded by my lock. */
+    private long _evictions;
+}
@@ -0,0 +1,103 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** The suite of all JUnit tests for the LruCache class.
+ *  @author Xuanyi Zhang
+ */
+public class LruCacheTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    @Test
+    public void testCountsAndEviction() {
+        LruCache<String, String> cache = new LruCache<>(10, String::length);
+        assertEquals("AAAA", cache.get("a", k -> "AAAA"));
+        assertEquals("BBBB", cache.get("b", k -> "BBBB"));
+        assertEquals("AAAA", cache.get("a", k -> "wrong"));
+        assertEquals("CCCC", cache.get("c", k -> "CCCC"));
+        assertEquals(2, cache.size());
+        assertEquals(8, cache.weight());
+        assertEquals(1, cache.hits());
+        assertEquals(3, cache.misses());
+        assertEquals(1, cache.evictions());
+        assertEquals("BBBB", cache.get("b", k -> "BBBB"));
+        assertEquals(4, cache.misses());
+        assertEquals("XXXXXXXXXXXX", cache.get("x", k -> "XXXXXXXXXXXX"));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testEvictsUnusedFirst() {
+        int n = 20000;
+        LruCache<Integer, String> cache = new LruCache<>(n, v -> 1);
+        for (int i = 0; i < n; i += 1) {
+            cache.get(i, k -> "v" + k);
+        }
+        for (int i = 0; i < n; i += 2) {
+            cache.get(i, k -> "wrong");
+        }
+        for (int i = n; i < n + n / 2; i += 1) {
+            cache.get(i, k -> "v" + k);
+        }
+        assertEquals(n / 2, cache.evictions());
+        for (int i = 0; i < n; i += 2) {
+            assertEquals("v" + i, cache.get(i, k -> "wrong"));
+        }
+        assertEquals(n, cache.size());
+    }
+
+    @Test
+    public void testLoadsOutsideLock() throws InterruptedException {
+        LruCache<String, String> cache = new LruCache<>(100, String::length);
+        cache.get("a", k -> "AAAA");
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        Runnable slow = () -> cache.get("slow", k -> {
+            loads.incrementAndGet();
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+            }
+            return "SLOW";
+        });
+        Thread first = new Thread(slow), second = new Thread(slow);
+        first.start();
+        started.await();
+        second.start();
+        assertEquals("AAAA", cache.get("a", k -> "wrong"));
+        assertEquals("BBBB", cache.get("b", k -> "BBBB"));
+        release.countDown();
+        first.join();
+        second.join();
+        assertEquals(1, loads.get());
+        assertEquals("SLOW", cache.get("slow", k -> "wrong"));
+        assertEquals(12, cache.weight());
+    }
+
+    @Test
+    public void testFailedLoadIsNotCached() {
+        LruCache<String, String> cache = new LruCache<>(100, String::length);
+        try {
+            cache.get("a", k -> {
+                throw new EnigmaException("no");
+            });
+            fail("exception not passed on");
+        } catch (EnigmaException excp) {
+            assertEquals("no", excp.getMessage());
+        }
+        assertEquals(0, cache.size());
+        assertEquals("AAAA", cache.get("a", k -> "AAAA"));
+    }
+}
@@ -1,7 +1,14 @@
 package enigma;
 
+import java.nio.CharBuffer;
 import java.util.Collection;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import static enigma.EnigmaException.*;
 
@@ -19,6 +26,17 @@ class Machine {
         _numrotors = numRotors;
         _numpawls = pawls;
         _allrotors = allRotors;
+        _registry = new HashMap<>();
+        for (Rotor r : allRotors) {
+            if (_registry.put(r.name(), r) != null) {
+                throw error("duplicate rotor name %s", r.name());
+            }
+        }
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
     }
 
     /** Return the number of rotor slots I have. */
@@ -32,39 +50,97 @@ class Machine {
         return _numpawls;
     }
 
+    /** Return all the rotors available to me. */
+    Collection<Rotor> allRotors() {
+        return _allrotors;
+    }
+
     /** Set my rotor slots to the rotors named ROTORS from my set of
      *  available rotors (ROTORS[0] names the reflector).
      *  Initially, all rotors are set at their 0 setting. */
     void insertRotors(String[] rotors) {
-        ArrayList<String> allnames = new ArrayList<>();
-        _Rotors = new ArrayList<>();
-        for (Rotor r : _allrotors) {
-            allnames.add(r.name());
+        insertRotors(selectRotors(rotors));
+    }
+
+    /** Set my rotor slots to ROTORS, as returned by selectRotors.
+     *  Initially, all rotors are set at their 0 setting. */
+    void insertRotors(Rotor[] rotors) {
+        _rotors = rotors.clone();
+        _Rotors = new ArrayList<>(Arrays.asList(_rotors));
+        _rotates = new boolean[_rotors.length];
+        for (int i = 0; i < _rotors.length; i++) {
+            _rotors[i].set(0);
+            _rotates[i] = _rotors[i].rotates();
         }
+        _advance = new boolean[_rotors.length];
+        _inner = new int[_alphabet.size()];
+        _innerValid = false;
+    }
+
+    /** Return the rotors named ROTORS from my set of available rotors, in
+     *  order, checking that they can fill my slots (ROTORS[0] names the
+     *  reflector).  Does not change my state. */
+    Rotor[] selectRotors(String[] rotors) {
         if (_numrotors != rotors.length) {
             throw new EnigmaException("Slots not equal to numrotors");
         }
-        for (String s : rotors) {
-            for (Rotor r : _allrotors) {
-                if (!allnames.contains(s)) {
-                    throw new EnigmaException("rotor not available");
-                } else if (_Rotors.contains(s)) {
-                    throw new EnigmaException("Duplicate rotors");
-                } else if (s.equals(r.name())) {
-                    _Rotors.add(r);
-                }
+        Rotor[] selected = new Rotor[rotors.length];
+        HashSet<String> seen = new HashSet<>();
+        for (int i = 0; i < rotors.length; i++) {
+            selected[i] = _registry.get(rotors[i]);
+            if (selected[i] == null) {
+                throw new EnigmaException("rotor not available");
+            } else if (!seen.add(rotors[i])) {
+                throw new EnigmaException("Duplicate rotors");
             }
-
-        }
-        for (int i = 0; i < _Rotors.size(); i++) {
-            _Rotors.get(i).set(0);
         }
-        if (!_Rotors.get(0).reflecting()) {
+        if (!selected[0].reflecting()) {
             throw new EnigmaException("Rotor 1 must be reflector");
         }
+        return selected;
+    }
+
+    /** Return a new machine with my alphabet, slots and pawls whose
+     *  available rotors are private copies of mine, with no rotors
+     *  inserted and all ring settings 0.  Nothing done to the result
+     *  affects me. */
+    Machine copyConfiguration() {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        for (Rotor r : _allrotors) {
+            Rotor copy = r.copy();
+            copy.rset(_alphabet.toChar(0));
+            rotors.add(copy);
+        }
+        return new Machine(_alphabet, _numrotors, _numpawls, rotors);
+    }
 
+    /** Return a new machine with my configuration, whose slots hold copies
+     *  of my rotors at their current settings.  Converting with the copy
+     *  does not affect me. */
+    Machine copy() {
+        Machine result = new Machine(_alphabet, _numrotors, _numpawls,
+                                     _allrotors);
+        result._plugboard = _plugboard;
+        if (_rotors != null) {
+            result._rotors = new Rotor[_rotors.length];
+            for (int i = 0; i < _rotors.length; i++) {
+                result._rotors[i] = _rotors[i].copy();
+                result._Rotors.add(result._rotors[i]);
+            }
+            result._rotates = _rotates;
+            result._advance = new boolean[_rotors.length];
+            result._inner = new int[_alphabet.size()];
+        }
+        return result;
+    }
 
+    /** Return the rotors in my slots, the reflector first.  They should
+     *  be moved only through my methods, which track when the cached
+     *  part of my wiring changes. */
+    Rotor[] rotors() {
+        return _rotors;
     }
+
     /** Set my rotors' ring settings according to RSETTING.  */
     void setRings(String rsetting) {
         if (rsetting.length() != _numrotors - 1) {
@@ -77,6 +153,7 @@ class Machine {
                 _Rotors.get(i + 1).rset(rsetting.charAt(i));
             }
         }
+        _innerValid = false;
     }
 
     /** Set my rotors according to SETTING, which must be a string of
@@ -94,6 +171,7 @@ class Machine {
             }
 
         }
+        _innerValid = false;
     }
 
     /** Set the plugboard to PLUGBOARD. */
@@ -101,72 +179,369 @@ class Machine {
         _plugboard = plugboard;
     }
 
+    /** Return my plugboard, or null if none has been set. */
+    Permutation plugboard() {
+        return _plugboard;
+    }
+
+    /** Step my rotors exactly as N calls to convert(int) would, without
+     *  converting anything.  Runs of steps in which only the rightmost
+     *  rotor moves are taken in a single jump, so this costs time
+     *  proportional to the number of steps that move any other rotor. */
+    void skip(long n) {
+        Rotor[] rotors = _rotors;
+        int last = rotors.length - 1;
+        while (n > 0) {
+            boolean quiet = true;
+            for (int i = 1; i < last && quiet; i++) {
+                quiet = !_rotates[i]
+                    || !((i + 1 < last && rotors[i + 1].atNotch())
+                         || (i > 1 && _rotates[i - 1] && rotors[i].atNotch()));
+            }
+            int toNotch = rotors[last].advancesToNotch();
+            if (quiet && toNotch != 0) {
+                long k = toNotch < 0 ? n : Math.min(n, toNotch);
+                rotors[last].advance((int) (k % rotors[last].size()));
+                n -= k;
+            } else {
+                step();
+                n -= 1;
+            }
+        }
+    }
+
+    /** Advance my rotors as for one character of input. */
+    private void step() {
+        Rotor[] rotors = _rotors;
+        boolean[] advance = _advance;
+        int last = rotors.length - 1;
+        for (int i = 1; i < last; i++) {
+            advance[i] = rotors[i + 1].atNotch()
+                || (i > 1 && _rotates[i - 1] && rotors[i].atNotch());
+        }
+        for (int m = 1; m < last; m++) {
+            if (advance[m]) {
+                rotors[m].advance();
+                _innerValid = false;
+            }
+        }
+        rotors[last].advance();
+    }
+
     /** Returns the result of converting the input character C (as an
      *  index in the range 0..alphabet size - 1), after first advancing
      *  the machine. */
     int convert(int c) {
 
-        if (c > _alphabet.size() || c < 0) {
+        if (c >= _alphabet.size() || c < 0) {
             throw new EnigmaException("bad input character");
         }
 
-        Boolean[] advancecheck = new Boolean[_numrotors];
-        for (int k = 0; k < advancecheck.length; k++) {
-            advancecheck[k] = false;
+        step();
+        return _plugboard.invert(core(_plugboard.permute(c)));
+    }
+
+    /** Return the conversion of C by my rotors alone at their current
+     *  positions, without the plugboard or stepping.  The part of the
+     *  path inside the rightmost rotor is looked up in _inner. */
+    private int core(int c) {
+        Rotor fast = _rotors[_rotors.length - 1];
+        if (!_innerValid) {
+            clearInner();
         }
-        for (int i = 1; i < _numrotors - 1; i++) {
-            if (_Rotors.get(i + 1).atNotch()) {
-                advancecheck[i] = true;
-            }
+        int p = fast.convertForward(c);
+        int q = _inner[p];
+        if (q < 0) {
+            q = _inner[p] = inner(p);
         }
-        for (int n = 2; n < _numrotors - 1; n++) {
-            if (_Rotors.get(n - 1).rotates() && _Rotors.get(n).atNotch()) {
-                advancecheck[n] = true;
-            }
+        return fast.convertBackward(q);
+    }
+
+    /** Return the conversion of P by every rotor but the rightmost, from
+     *  the rightmost of those to the reflector and back, at their current
+     *  positions. */
+    private int inner(int p) {
+        Rotor[] rotors = _rotors;
+        int last = rotors.length - 1;
+        int inputint = p;
+        for (int i = last - 1; i >= 0; i--) {
+            inputint = rotors[i].convertForward(inputint);
         }
-        advancecheck[_numrotors - 1] = true;
-        for (int m = 0; m < advancecheck.length; m++) {
-            if (advancecheck[m]) {
-                _Rotors.get(m).advance();
-            }
+        for (int j = 1; j < last; j++) {
+            inputint = rotors[j].convertBackward(inputint);
         }
-        int inputint = c;
-        inputint = _plugboard.permute(inputint);
-        for (int i = _Rotors.size() - 1; i >= 0; i--) {
-            inputint = _Rotors.get(i).convertForward(inputint);
+        return inputint;
+    }
+
+    /** Forget every entry of _inner, after a rotor other than the
+     *  rightmost has moved or been reset. */
+    private void clearInner() {
+        Arrays.fill(_inner, -1);
+        _innerValid = true;
+    }
+
+    /** Return the substitutions my rotors alone (without the plugboard)
+     *  make at each of the next LENGTH positions, advancing my rotors as
+     *  converting LENGTH letters would.  Decrypting against the result
+     *  with a Plugboard gives the same letters as setting that plugboard
+     *  and converting, without stepping any rotor again. */
+    RotorCore rotorCore(int length) {
+        int size = _alphabet.size();
+        if (length < 0 || (long) length * size > Integer.MAX_VALUE) {
+            throw error("bad rotor core length %d", length);
         }
-        for (int j = 1; j < _Rotors.size(); j++) {
-            inputint = _Rotors.get(j).convertBackward(inputint);
+        int[] table = new int[length * size];
+        for (int t = 0; t < length; t++) {
+            step();
+            for (int c = 0; c < size; c++) {
+                table[t * size + c] = core(c);
+            }
         }
-        inputint = _plugboard.invert(inputint);
-        return inputint;
+        return new RotorCore(_alphabet, table);
     }
 
     /** Returns the encoding/decoding of MSG, updating the state of
      *  the rotors accordingly. */
     String convert(String msg) {
+        char[] msgchar = msg.toCharArray();
+        convert(msgchar, 0, msgchar.length, msgchar, 0);
+        return new String(msgchar);
+    }
 
-        char[] msgchar = new char[msg.length()];
-        for (int i = 0; i < msg.length(); i++) {
-            if (!_alphabet.contains(msg.charAt(i)) && msg.charAt(i) != ' ') {
-                throw new EnigmaException("bad message");
-            } else {
-                msgchar[i] = msg.charAt(i);
+    /** Convert the LEN characters of SRC starting at OFF into DST starting
+     *  at DSTOFF, updating the state of the rotors accordingly.  Spaces
+     *  are copied unchanged.  SRC and DST may be the same array.  The
+     *  whole range is checked before any rotor moves, so a bad message
+     *  leaves the machine and DST untouched.  Long messages go through
+     *  convertBlock. */
+    void convert(char[] src, int off, int len, char[] dst, int dstOff) {
+        Objects.checkFromIndexSize(off, len, src.length);
+        Objects.checkFromIndexSize(dstOff, len, dst.length);
+        for (int i = off; i < off + len; i++) {
+            checkMessageChar(src[i]);
+        }
+        if (len >= MIN_BLOCK && (src != dst || off == dstOff)
+            && compiled()) {
+            for (int i = 0; i < len; i += BLOCK) {
+                convertBlock(src, off + i, Math.min(BLOCK, len - i),
+                             dst, dstOff + i);
+            }
+            return;
+        }
+        for (int i = 0; i < len; i++) {
+            dst[dstOff + i] = convertChar(src[off + i]);
+        }
+    }
+
+    /** Return true iff all my rotors have wiring tables. */
+    private boolean compiled() {
+        for (Rotor r : _rotors) {
+            if (!r.compiled()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Convert the LEN <= BLOCK valid message characters of SRC starting at
+     *  OFF into DST starting at DSTOFF, with the same result as
+     *  convertChar on each.  The rotors are stepped through the whole
+     *  block first, recording the table row of each rotor that moves for
+     *  each letter.  Then each stage (plugboard, each rotor forward and
+     *  backward, plugboard) is applied to all the letters at once, so
+     *  that each pass is a simple table gather over an int[].  Rotors
+     *  that do not move within the block, such as the reflector, use a
+     *  fixed row. */
+    private void convertBlock(char[] src, int off, int len,
+                              char[] dst, int dstOff) {
+        Rotor[] rotors = _rotors;
+        int last = rotors.length - 1;
+        if (_block == null || _bases.length != rotors.length) {
+            _block = new int[BLOCK];
+            _bases = new int[rotors.length][BLOCK];
+            _varies = new boolean[rotors.length];
+        }
+        int[] block = _block;
+        Arrays.fill(_varies, false);
+        int n = 0;
+        for (int i = off; i < off + len; i++) {
+            char ch = src[i];
+            if (ch != ' ') {
+                block[n] = _alphabet.toInt(ch);
+                step();
+                for (int k = 1; k <= last; k++) {
+                    if (_rotates[k]) {
+                        _bases[k][n] = rotors[k].tableBase();
+                        _varies[k] |= _bases[k][n] != _bases[k][0];
+                    }
+                }
+                n += 1;
+            }
+        }
+        _plugboard.permute(block, 0, n);
+        for (int k = last; k >= 0; k--) {
+            rotors[k].convertForward(block, _varies[k] ? _bases[k] : null,
+                                     0, n);
+        }
+        for (int k = 1; k <= last; k++) {
+            rotors[k].convertBackward(block, _varies[k] ? _bases[k] : null,
+                                      0, n);
+        }
+        _plugboard.invert(block, 0, n);
+        n = 0;
+        for (int i = 0; i < len; i++) {
+            char ch = src[off + i];
+            dst[dstOff + i] = ch == ' ' ? ' ' : _alphabet.toChar(block[n++]);
+        }
+    }
+
+    /** Convert the remaining characters of SRC into DST as for
+     *  convert(char[], int, int, char[], int), advancing the positions
+     *  of both buffers.  SRC and DST may be the same buffer, in which
+     *  case it is converted in place. */
+    void convert(CharBuffer src, CharBuffer dst) {
+        int len = src.remaining();
+        if (dst.remaining() < len) {
+            throw new EnigmaException("output buffer too small");
+        }
+        if (src.hasArray() && dst.hasArray() && !dst.isReadOnly()) {
+            convert(src.array(), src.arrayOffset() + src.position(), len,
+                    dst.array(), dst.arrayOffset() + dst.position());
+        } else {
+            int srcpos = src.position(), dstpos = dst.position();
+            for (int i = 0; i < len; i++) {
+                checkMessageChar(src.get(srcpos + i));
             }
+            for (int i = 0; i < len; i++) {
+                dst.put(dstpos + i, convertChar(src.get(srcpos + i)));
+            }
+        }
+        if (src != dst) {
+            src.position(src.position() + len);
+        }
+        dst.position(dst.position() + len);
+    }
+
+    /** Returns the encoding/decoding of MSG as for convert(String), using
+     *  convertParallel on the common fork-join pool. */
+    String convertParallel(String msg) {
+        char[] msgchar = msg.toCharArray();
+        convertParallel(msgchar, 0, msgchar.length, msgchar, 0,
+                        ForkJoinPool.commonPool());
+        return new String(msgchar);
+    }
+
+    /** Convert as for convert(char[], int, int, char[], int), but split the
+     *  LEN characters of SRC starting at OFF into segments that are
+     *  converted concurrently on POOL, each by a copy of me skipped ahead
+     *  to the segment's start.  Leaves DST and me exactly as the
+     *  sequential form would.  SRC and DST may be the same array only if
+     *  OFF == DSTOFF. */
+    void convertParallel(char[] src, int off, int len, char[] dst,
+                         int dstOff, ForkJoinPool pool) {
+        Objects.checkFromIndexSize(off, len, src.length);
+        Objects.checkFromIndexSize(dstOff, len, dst.length);
+        int segments = Math.max(1, Math.min(len / MIN_SEGMENT,
+                                            4 * pool.getParallelism()));
+        int[] starts = new int[segments + 1];
+        long[] skips = new long[segments];
+        long letters = 0;
+        for (int k = 0; k < segments; k++) {
+            starts[k] = off + (int) ((long) len * k / segments);
+            skips[k] = letters;
+            int end = off + (int) ((long) len * (k + 1) / segments);
+            for (int i = starts[k]; i < end; i++) {
+                checkMessageChar(src[i]);
+                if (src[i] != ' ') {
+                    letters += 1;
+                }
+            }
+        }
+        starts[segments] = off + len;
+        pool.invoke(new SegmentTask(this, src, dst, dstOff - off,
+                                    starts, skips, 0, segments));
+        skip(letters);
+    }
+
+    /** Converts segments of a message concurrently, each with its own copy
+     *  of a machine. */
+    private static class SegmentTask extends RecursiveAction {
+
+        /** Converts segments LO .. HI-1 of SRC into DST, where segment K
+         *  runs from STARTS[K] to STARTS[K + 1] and is converted by a copy
+         *  of MACHINE skipped ahead SKIPS[K] characters.  Each output
+         *  position is SHIFT past its input position. */
+        SegmentTask(Machine machine, char[] src, char[] dst, int shift,
+                    int[] starts, long[] skips, int lo, int hi) {
+            _machine = machine;
+            _src = src;
+            _dst = dst;
+            _shift = shift;
+            _starts = starts;
+            _skips = skips;
+            _lo = lo;
+            _hi = hi;
         }
-        char[] msgout = new char[msgchar.length];
-        for (int j = 0; j < msgchar.length; j++) {
-            if (msgchar[j] != ' ') {
-                int msgint = _alphabet.toInt(msgchar[j]);
-                msgout[j] = _alphabet.toChar(convert(msgint));
+
+        @Override
+        protected void compute() {
+            if (_hi - _lo == 1) {
+                Machine segment = _machine.copy();
+                segment.skip(_skips[_lo]);
+                for (int i = _starts[_lo]; i < _starts[_lo + 1]; i++) {
+                    _dst[i + _shift] = segment.convertChar(_src[i]);
+                }
             } else {
-                msgout[j] = ' ';
+                int mid = (_lo + _hi) / 2;
+                invokeAll(new SegmentTask(_machine, _src, _dst, _shift,
+                                          _starts, _skips, _lo, mid),
+                          new SegmentTask(_machine, _src, _dst, _shift,
+                                          _starts, _skips, mid, _hi));
             }
+        }
+
+        /** The machine whose state is the start of the message. */
+        private final Machine _machine;
+        /** The message. */
+        private final char[] _src;
+        /** Destination for the converted message. */
+        private final char[] _dst;
+        /** Offset from input to output positions. */
+        private final int _shift;
+        /** Start of each segment, followed by the end of the last. */
+        private final int[] _starts;
+        /** Number of letters preceding each segment. */
+        private final long[] _skips;
+        /** The range of segments handled by this task. */
+        private final int _lo, _hi;
+    }
 
+    /** Throw an exception unless CH may appear in a message. */
+    private void checkMessageChar(char ch) {
+        if (!_alphabet.contains(ch) && ch != ' ') {
+            throw new EnigmaException("bad message");
         }
-        return new String(msgout);
     }
 
+    /** Returns the conversion of message character CH, which is a space
+     *  or in my alphabet. */
+    private char convertChar(char ch) {
+        if (ch == ' ') {
+            return ' ';
+        }
+        return _alphabet.toChar(convert(_alphabet.toInt(ch)));
+    }
+
+    /** Number of characters converted together by convertBlock. */
+    static final int BLOCK = 1 << 10;
+
+    /** Shortest message converted by convertBlock. */
+    static final int MIN_BLOCK = 1 << 6;
+
+    /** Smallest number of characters convertParallel gives to one
+     *  segment. */
+    static final int MIN_SEGMENT = 1 << 14;
+
     /** Common alphabet of my rotors. */
     private final Alphabet _alphabet;
     /** The number of rotors for the machine. */
@@ -175,8 +550,31 @@ class Machine {
     private int _numpawls;
     /** The collection of all rotors according to configuration file. */
     private Collection<Rotor> _allrotors;
+    /** The rotors of _allrotors, indexed by name. */
+    private final HashMap<String, Rotor> _registry;
     /** The rotors that are present in my machine. */
     private ArrayList<Rotor> _Rotors = new ArrayList<>();
+    /** _Rotors as an array, rebuilt by insertRotors. */
+    private Rotor[] _rotors;
+    /** Entry K is true iff _rotors[K] rotates. */
+    private boolean[] _rotates;
+    /** Scratch flags recording which rotors advance on the current step. */
+    private boolean[] _advance;
     /** The plugboard in my machine. */
     private Permutation _plugboard;
+    /** Entry P, if not -1, is the conversion of P by every rotor but the
+     *  rightmost, at their current positions, as for inner.  Only the
+     *  rightmost rotor moves between most steps, so entries are filled as
+     *  they are needed and all cleared only when another rotor moves. */
+    private int[] _inner;
+    /** False iff a rotor other than the rightmost has moved since _inner
+     *  was last cleared. */
+    private boolean _innerValid;
+    /** Scratch alphabet indices of the letters of a block, allocated by
+     *  convertBlock. */
+    private int[] _block;
+    /** Scratch table rows of each rotor for each letter of a block. */
+    private int[][] _bases;
+    /** Scratch flags recording which rotors move within a block. */
+    private boolean[] _varies;
 }
@@ -0,0 +1,279 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Machine class.
+ *  @author Xuanyi Zhang
+ */
+public class MachineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a 5-slot, 3-pawl machine over the naval rotors. */
+    static Machine navalMachine() {
+        ArrayList<Rotor> allRotors = new ArrayList<>();
+        String[] moving = { "I", "II", "III", "IV", "V", "VI", "VII",
+                            "VIII" };
+        String[] notches = { "Q", "E", "V", "J", "Z", "ZM", "ZM", "ZM" };
+        for (int i = 0; i < moving.length; i += 1) {
+            allRotors.add(new MovingRotor(moving[i],
+                new Permutation(NAVALA.get(moving[i]), UPPER), notches[i]));
+        }
+        allRotors.add(new FixedRotor("Beta",
+            new Permutation(NAVALA.get("Beta"), UPPER)));
+        allRotors.add(new FixedRotor("Gamma",
+            new Permutation(NAVALA.get("Gamma"), UPPER)));
+        allRotors.add(new Reflector("B",
+            new Permutation(NAVALA.get("B"), UPPER)));
+        allRotors.add(new Reflector("C",
+            new Permutation(NAVALA.get("C"), UPPER)));
+        return new Machine(UPPER, 5, 3, allRotors);
+    }
+
+    /** Return a machine with SLOTS slots, a pawl for each slot but the
+     *  reflector's, reflector B and rotors I, II and III. */
+    static Machine smallMachine(int slots) {
+        ArrayList<Rotor> allRotors = new ArrayList<>();
+        allRotors.add(new Reflector("B",
+            new Permutation(NAVALA.get("B"), UPPER)));
+        String[] moving = { "I", "II", "III" };
+        String[] notches = { "Q", "E", "V" };
+        for (int i = 0; i < moving.length; i += 1) {
+            allRotors.add(new MovingRotor(moving[i],
+                new Permutation(NAVALA.get(moving[i]), UPPER), notches[i]));
+        }
+        return new Machine(UPPER, slots, slots - 1, allRotors);
+    }
+
+    /** Set up M with the rotors and plugboard of the sample message. */
+    static void sampleSettings(Machine M) {
+        M.insertRotors(new String[] { "B", "Beta", "III", "IV", "I" });
+        M.setRotors("AXLE");
+        M.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)", UPPER));
+    }
+
+    /** Return the number of bytes allocated so far by this thread. */
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean)
+                ManagementFactory.getThreadMXBean())
+            .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testSampleMessage() {
+        Machine M = navalMachine();
+        sampleSettings(M);
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW",
+                     M.convert("FROMHISSHOULDERHIAWATHA"));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testDuplicateRotors() {
+        navalMachine().insertRotors(new String[] { "B", "Beta", "I", "II",
+                                                   "I" });
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testUnknownRotor() {
+        navalMachine().insertRotors(new String[] { "B", "Beta", "I", "II",
+                                                   "IX" });
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testReflectorFirst() {
+        navalMachine().insertRotors(new String[] { "Beta", "B", "I", "II",
+                                                   "III" });
+    }
+
+    @Test
+    public void testBulkConvert() {
+        Machine M = navalMachine();
+        sampleSettings(M);
+        char[] buf = "xxFROM HIS SHOULDER HIAWATHAxx".toCharArray();
+        M.convert(buf, 2, buf.length - 4, buf, 2);
+        assertEquals("xxQVPQ SOK OILPUBKJ ZPISFXDWxx", new String(buf));
+
+        sampleSettings(M);
+        CharBuffer in = CharBuffer.wrap("FROM HIS SHOULDER HIAWATHA");
+        CharBuffer out = ByteBuffer.allocateDirect(64).asCharBuffer();
+        M.convert(in, out);
+        assertEquals(0, in.remaining());
+        out.flip();
+        assertEquals("QVPQ SOK OILPUBKJ ZPISFXDW", out.toString());
+    }
+
+    @Test
+    public void testResettingAfterConverting() {
+        Machine M = navalMachine();
+        sampleSettings(M);
+        String first = M.convert("FROMHISSHO");
+        assertEquals("QVPQSOKOIL", first);
+        M.setRotors("AXLE");
+        assertEquals(first, M.convert("FROMHISSHO"));
+        M.setRings("AAAB");
+        M.setRotors("AXLF");
+        assertEquals(first, M.convert("FROMHISSHO"));
+        M.setRings("ABAA");
+        M.setRotors("AXLE");
+        assertFalse(first.equals(M.convert("FROMHISSHO")));
+    }
+
+    @Test
+    public void testBlockConvertMatchesScalar() {
+        Random random = new Random(61);
+        Machine block = navalMachine(), scalar = navalMachine();
+        for (Machine M : new Machine[] { block, scalar }) {
+            M.insertRotors(new String[] { "C", "Gamma", "VI", "I", "VIII" });
+            M.setRings("BQZA");
+            M.setRotors("XDYL");
+            M.setPlugboard(new Permutation("(AQ) (MZ) (CE)", UPPER));
+        }
+        for (int len : new int[] { Machine.MIN_BLOCK, 3 * Machine.BLOCK + 7 }) {
+            String msg = CompiledMachineTest.randomMessage(random, len);
+            StringBuilder expected = new StringBuilder();
+            for (int i = 0; i < len; i += 1) {
+                char ch = msg.charAt(i);
+                expected.append(ch == ' '
+                    ? ' ' : UPPER.toChar(scalar.convert(UPPER.toInt(ch))));
+            }
+            assertEquals(expected.toString(), block.convert(msg));
+            assertEquals(settingsOf(scalar), settingsOf(block));
+        }
+    }
+
+    @Test
+    public void testBulkConvertRejectsBeforeStepping() {
+        Machine M = navalMachine();
+        sampleSettings(M);
+        char[] buf = "FROMHISs".toCharArray();
+        try {
+            M.convert(buf, 0, buf.length, buf, 0);
+            fail("expected EnigmaException");
+        } catch (EnigmaException excp) {
+            assertEquals("FROMHISs", new String(buf));
+        }
+        assertEquals("QVPQSOK", M.convert("FROMHIS"));
+    }
+
+    @Test
+    public void testDoubleStep() {
+        Machine M = navalMachine();
+        M.insertRotors(new String[] { "B", "Beta", "I", "II", "III" });
+        M.setRotors("AADU");
+        M.setPlugboard(new Permutation("", UPPER));
+        String[] expected = { "AADV", "AAEW", "ABFX", "ABFY" };
+        for (String settings : expected) {
+            M.convert(0);
+            StringBuilder actual = new StringBuilder();
+            for (String name : new String[] { "Beta", "I", "II", "III" }) {
+                actual.append(UPPER.toChar(settingOf(M, name)));
+            }
+            assertEquals(settings, actual.toString());
+        }
+    }
+
+    @Test
+    public void testSkip() {
+        Random random = new Random(61);
+        String[][] orders = {
+            { "B", "Beta", "III", "IV", "I" },
+            { "C", "Gamma", "VI", "VII", "VIII" },
+            { "B", "Beta", "I", "II", "III" },
+        };
+        for (String[] order : orders) {
+            for (int trial = 0; trial < 20; trial += 1) {
+                Machine stepped = navalMachine();
+                stepped.insertRotors(order);
+                stepped.setPlugboard(new Permutation("", UPPER));
+                String settings = "";
+                for (int i = 0; i < 4; i += 1) {
+                    settings += UPPER.toChar(random.nextInt(UPPER.size()));
+                }
+                stepped.setRotors(settings);
+                Machine skipped = stepped.copy();
+                int n = random.nextInt(20000);
+                for (int i = 0; i < n; i += 1) {
+                    stepped.convert(0);
+                }
+                skipped.skip(n);
+                assertEquals(settingsOf(stepped), settingsOf(skipped));
+            }
+        }
+    }
+
+    @Test
+    public void testConvertParallel() {
+        Random random = new Random(61);
+        StringBuilder msg = new StringBuilder();
+        for (int i = 0; i < 8 * Machine.MIN_SEGMENT + 17; i += 1) {
+            msg.append(random.nextInt(6) == 0
+                       ? ' ' : UPPER.toChar(random.nextInt(UPPER.size())));
+        }
+        Machine sequential = navalMachine();
+        sampleSettings(sequential);
+        Machine parallel = navalMachine();
+        sampleSettings(parallel);
+        String expected = sequential.convert(msg.toString());
+        char[] buf = msg.toString().toCharArray();
+        parallel.convertParallel(buf, 0, buf.length, buf, 0,
+                                 new ForkJoinPool(4));
+        assertEquals(expected, new String(buf));
+        assertEquals(settingsOf(sequential), settingsOf(parallel));
+        assertEquals(sequential.convert("FROMHIS"),
+                     parallel.convertParallel("FROMHIS"));
+    }
+
+    @Test
+    public void testConvertAllocatesNothing() {
+        Machine M = navalMachine();
+        sampleSettings(M);
+        for (int i = 0; i < 200000; i += 1) {
+            M.convert(i % UPPER.size());
+        }
+        long before = allocatedBytes();
+        int acc = 0;
+        for (int i = 0; i < 100000; i += 1) {
+            acc += M.convert(i % UPPER.size());
+        }
+        long allocated = allocatedBytes() - before;
+        assertTrue(acc >= 0);
+        assertTrue("allocated " + allocated + " bytes", allocated < 1024);
+    }
+
+    /** Return the settings of the rotors of M after the reflector. */
+    private static String settingsOf(Machine M) {
+        String result = "";
+        for (int i = 1; i < M.rotors().length; i += 1) {
+            result += UPPER.toChar(M.rotors()[i].setting());
+        }
+        return result;
+    }
+
+    /** Return the setting of the rotor named NAME in M. */
+    private static int settingOf(Machine M, String name) {
+        for (Rotor r : M.rotors()) {
+            if (r.name().equals(name)) {
+                return r.setting();
+            }
+        }
+        throw new AssertionError("no rotor " + name);
+    }
+}
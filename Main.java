@@ -1,13 +1,26 @@
 package enigma;
 
-import java.io.File;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
-import java.io.PrintStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.NoSuchElementException;
-import java.util.Scanner;
+import java.util.List;
 
 import static enigma.EnigmaException.*;
 
@@ -24,7 +37,25 @@ public final class Main {
      *  input.  ARGS[2] is optional; when present, it names an output
      *  file for processed messages.  Otherwise, output goes to the
      *  standard output. Exits normally if there are no errors in the input;
-     *  otherwise with code 1. */
+     *  otherwise with code 1.
+     *
+     *  Alternatively, ARGS may be --mapped CONFIG INPUT OUTPUT, which
+     *  memory-maps the INPUT file instead of streaming it, and writes
+     *  OUTPUT in large blocks.  The output is the same as for CONFIG INPUT
+     *  OUTPUT.
+     *
+     *  ARGS may also be --compile CONFIG OUTPUT, which writes CONFIG in
+     *  the precompiled form of BinaryConfig to OUTPUT.  Anywhere a
+     *  configuration file is expected, a precompiled one may be given
+     *  instead.
+     *
+     *  ARGS may also be --daemon CONFIG SOCKET, which keeps CONFIG loaded
+     *  and processes jobs submitted to the Unix domain socket SOCKET until
+     *  killed, or --submit SOCKET INPUT OUTPUT, which has the daemon
+     *  listening on SOCKET do what CONFIG INPUT OUTPUT would.
+     *
+     *  Finally, ARGS may be --serve CONFIG PORT, which runs an
+     *  EncryptionServer for CONFIG on loopback port PORT until killed. */
     public static void main(String... args) {
         try {
             new Main(args).process();
@@ -37,38 +68,164 @@ public final class Main {
 
     /** Check ARGS and open the necessary files (see comment on main). */
     Main(String[] args) {
+        if (args.length > 0 && args[0].equals(COMPILE_OPTION)) {
+            if (args.length != 3) {
+                throw error("%s needs configuration and output files",
+                            COMPILE_OPTION);
+            }
+            _config = getConfig(args[1]);
+            _compileOutput = args[2];
+            return;
+        }
+        if (args.length > 0 && args[0].equals(DAEMON_OPTION)) {
+            if (args.length != 3) {
+                throw error("%s needs configuration and socket files",
+                            DAEMON_OPTION);
+            }
+            _config = getConfig(args[1]);
+            _daemonSocket = args[2];
+            return;
+        }
+        if (args.length > 0 && args[0].equals(SERVE_OPTION)) {
+            if (args.length != 3) {
+                throw error("%s needs configuration file and port",
+                            SERVE_OPTION);
+            }
+            _config = getConfig(args[1]);
+            try {
+                _servePort = Integer.parseInt(args[2]);
+            } catch (NumberFormatException excp) {
+                _servePort = -1;
+            }
+            if (_servePort < 0 || _servePort > MAX_PORT) {
+                throw error("bad port number: %s", args[2]);
+            }
+            return;
+        }
+        if (args.length > 0 && args[0].equals(SUBMIT_OPTION)) {
+            if (args.length != 4) {
+                throw error("%s needs socket, input and output files",
+                            SUBMIT_OPTION);
+            }
+            _submitSocket = args[1];
+            _submitInput = args[2];
+            _submitOutput = args[3];
+            return;
+        }
+        if (args.length > 0 && args[0].equals(MAPPED_OPTION)) {
+            if (args.length != 4) {
+                throw error("%s needs configuration, input and output files",
+                            MAPPED_OPTION);
+            }
+            _config = getConfig(args[1]);
+            _mappedInput = args[2];
+            _mappedOutput = args[3];
+            return;
+        }
         if (args.length < 1 || args.length > 3) {
             throw error("Only 1, 2, or 3 command-line arguments allowed");
         }
 
-        _config = getInput(args[0]);
+        _config = getConfig(args[0]);
 
         if (args.length > 1) {
             _input = getInput(args[1]);
         } else {
-            _input = new Scanner(System.in);
+            _input = new BufferedReader(new InputStreamReader(System.in),
+                                        BUFFER_SIZE);
         }
 
         if (args.length > 2) {
             _output = getOutput(args[2]);
         } else {
-            _output = System.out;
+            _output = new PrintWriter(new BufferedWriter(
+                new OutputStreamWriter(System.out), BUFFER_SIZE));
+        }
+    }
+
+    /** A job of a daemon, applying a private copy of the configuration
+     *  CONFIG to the messages in the file named INPUT and writing the
+     *  results to the file named OUTPUT. */
+    private Main(Machine config, String input, String output) {
+        _prototype = config;
+        _input = getInput(input);
+        try {
+            _output = getOutput(output);
+        } catch (EnigmaException excp) {
+            close();
+            throw excp;
+        }
+    }
+
+    /** Apply a private copy of CONFIG to the messages in the file named
+     *  INPUT, writing the results to the file named OUTPUT, as
+     *  Main CONFIG INPUT OUTPUT would, and close both files. */
+    static void runJob(Machine config, String input, String output) {
+        Main job = new Main(config, input, output);
+        try {
+            job.process();
+        } finally {
+            job.close();
+        }
+    }
+
+    /** Close _input and _output, if open. */
+    private void close() {
+        try {
+            if (_input != null) {
+                _input.close();
+            }
+        } catch (IOException excp) {
+            throw error("could not close input");
+        } finally {
+            if (_output != null) {
+                _output.close();
+            }
+        }
+    }
+
+    /** Return a parser for the configuration in the file named NAME, or
+     *  null if it is a precompiled configuration, which is recorded in
+     *  _binaryConfig instead. */
+    private ConfigParser getConfig(String name) {
+        if (BinaryConfig.isBinary(Paths.get(name))) {
+            _binaryConfig = name;
+            return null;
+        }
+        try {
+            return new ConfigParser(
+                Files.readString(Paths.get(name), Charset.defaultCharset()));
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
         }
     }
 
-    /** Return a Scanner reading from the file named NAME. */
-    private Scanner getInput(String name) {
+    /** Return a buffered reader streaming from the file named NAME. */
+    private BufferedReader getInput(String name) {
         try {
-            return new Scanner(new File(name));
+            FileChannel channel = FileChannel.open(Paths.get(name));
+            return new BufferedReader(
+                Channels.newReader(channel,
+                                   Charset.defaultCharset().newDecoder(),
+                                   BUFFER_SIZE),
+                BUFFER_SIZE);
         } catch (IOException excp) {
             throw error("could not open %s", name);
         }
     }
 
-    /** Return a PrintStream writing to the file named NAME. */
-    private PrintStream getOutput(String name) {
+    /** Return a buffered writer streaming to the file named NAME. */
+    private PrintWriter getOutput(String name) {
         try {
-            return new PrintStream(new File(name));
+            FileChannel channel =
+                FileChannel.open(Paths.get(name), StandardOpenOption.WRITE,
+                                 StandardOpenOption.CREATE,
+                                 StandardOpenOption.TRUNCATE_EXISTING);
+            return new PrintWriter(new BufferedWriter(
+                Channels.newWriter(channel,
+                                   Charset.defaultCharset().newEncoder(),
+                                   BUFFER_SIZE),
+                BUFFER_SIZE));
         } catch (IOException excp) {
             throw error("could not open %s", name);
         }
@@ -77,196 +234,456 @@ public final class Main {
     /** Configure an Enigma machine from the contents of configuration
      *  file _config and apply it to the messages in _input, sending the
      *  results to _output. */
-    private void process() {
+    void process() {
+        if (_submitSocket != null) {
+            Daemon.submit(Paths.get(_submitSocket), _submitInput,
+                          _submitOutput);
+            return;
+        }
         Machine mymachine = readConfig();
-        if (!_input.hasNext()) {
-            throw new EnigmaException("Empty input");
-        }
-        if (!_input.hasNext("\\*")) {
-            throw new EnigmaException("input needs to start with a setting");
-        }
-        while (_input.hasNextLine()) {
-            String outputmessage = "";
-            String inputline = _input.nextLine();
-            if (inputline.contains("*")) {
-                char[] inputsetupclean = new char[inputline.length() - 1];
-                for (int i = 0; i < inputsetupclean.length; i++) {
-                    inputsetupclean[i] = inputline.charAt(i + 1);
-                }
-                String inputclean = new String(inputsetupclean);
-                setUp(mymachine, inputclean);
-            } else if (inputline.equals("")) {
-                _output.println();
-            } else {
-                outputmessage = mymachine.convert(inputline);
-                printMessageLine(outputmessage);
+        if (_daemonSocket != null) {
+            new Daemon(mymachine, Paths.get(_daemonSocket)).serve();
+            return;
+        }
+        if (_servePort >= 0) {
+            new EncryptionServer(mymachine, _servePort).serve();
+            return;
+        }
+        if (_compileOutput != null) {
+            BinaryConfig.write(mymachine, Paths.get(_compileOutput));
+            return;
+        }
+        if (_mappedInput != null) {
+            if (mappable()) {
+                processMapped(mymachine);
+                return;
             }
+            _input = getInput(_mappedInput);
+            _output = getOutput(_mappedOutput);
         }
-
-    }
-
-    /** Return an Enigma machine configured from the contents of configuration
-     *  file _config. */
-    private Machine readConfig() {
-        int numrotors = 0;
-        int numpawls = 0;
-        Collection<Rotor> allrotors = new ArrayList<>();
         try {
-            if (_config.hasNext()) {
-                _alphabet = new Alphabet(_config.nextLine());
-            } else {
-                throw new EnigmaException("no alphabet");
+            ArrayList<String> leading = new ArrayList<>();
+            String inputline = _input.readLine();
+            while (inputline != null && inputline.isBlank()) {
+                leading.add(inputline);
+                inputline = _input.readLine();
             }
-            if (_config.hasNextInt()) {
-                numrotors = _config.nextInt();
-            } else {
-                throw new EnigmaException("wrong numrotor format");
+            if (inputline == null) {
+                throw new EnigmaException("Empty input");
             }
-            if (_config.hasNextInt()) {
-                numpawls = _config.nextInt();
-            } else {
-                throw new EnigmaException("wrong numpawls format");
+            if (!inputline.strip().split("\\s+")[0].equals("*")) {
+                throw new EnigmaException("input needs to start with a "
+                                          + "setting");
             }
-            while (_config.hasNext()) {
-
-                allrotors.add(readRotor());
+            for (String line : leading) {
+                processLine(mymachine, line);
             }
-
-
-            return new Machine(_alphabet, numrotors, numpawls, allrotors);
-        } catch (NoSuchElementException excp) {
-            throw error("configuration file truncated");
+            while (inputline != null) {
+                processLine(mymachine, inputline);
+                inputline = _input.readLine();
+            }
+        } catch (IOException excp) {
+            throw error("could not read input");
+        } finally {
+            _output.flush();
+        }
+        if (_output.checkError()) {
+            throw error("could not write output");
         }
     }
 
-    /** Return a rotor, reading its description from _config. */
-    public Rotor readRotor() {
-        String cycles;
-        String name;
-        String typennotch;
-        Rotor thisrotor;
+    /** Apply the settings or message line INPUTLINE to MYMACHINE, writing
+     *  any result to _output. */
+    private void processLine(Machine mymachine, String inputline) {
+        if (inputline.contains("*")) {
+            char[] inputsetupclean = new char[inputline.length() - 1];
+            for (int i = 0; i < inputsetupclean.length; i++) {
+                inputsetupclean[i] = inputline.charAt(i + 1);
+            }
+            String inputclean = new String(inputsetupclean);
+            setUp(mymachine, inputclean);
+        } else if (inputline.equals("")) {
+            _output.println();
+        } else {
+            String outputmessage;
+            if (inputline.length() >= PARALLEL_LINE) {
+                outputmessage = mymachine.convertParallel(inputline);
+            } else {
+                outputmessage = mymachine.convert(inputline);
+            }
+            printMessageLine(outputmessage);
+        }
+    }
 
+    /** Return true iff the files named by _mappedInput and _mappedOutput
+     *  can be processed by processMapped: every character of _alphabet is
+     *  a single ASCII byte in the default charset, and the input is small
+     *  enough to be mapped as one region. */
+    private boolean mappable() {
+        String special = "* " + System.lineSeparator();
+        for (int i = 0; i < _alphabet.size(); i++) {
+            special += _alphabet.toChar(i);
+        }
+        Charset charset = Charset.defaultCharset();
+        if (!Arrays.equals(special.getBytes(charset),
+                           special.getBytes(StandardCharsets.US_ASCII))
+            || !Arrays.equals(special.getBytes(StandardCharsets.US_ASCII),
+                              special.getBytes(StandardCharsets.UTF_8))) {
+            return false;
+        }
         try {
-            if (!_config.hasNextLine()) {
-                throw new EnigmaException("no more rotors to read");
-            } else {
+            return Files.size(Paths.get(_mappedInput)) <= MAX_MAPPED_INPUT;
+        } catch (IOException excp) {
+            throw error("could not open %s", _mappedInput);
+        }
+    }
 
-                name = _config.next();
-                typennotch = _config.next();
-                cycles = _config.nextLine();
-                while (_config.hasNext("\\(.+\\)")) {
-                    cycles = cycles + _config.nextLine();
+    /** Memory-map _mappedInput and apply MYMACHINE to the messages in it,
+     *  writing exactly what process would write to _mappedOutput.  The
+     *  output is collected in a direct buffer and written through its
+     *  channel whenever the next line might not fit, so the output file
+     *  is never mapped and ends up exactly as long as what was written. */
+    private void processMapped(Machine mymachine) {
+        byte[] separator = System.lineSeparator().getBytes(
+            StandardCharsets.US_ASCII);
+        try (FileChannel in = FileChannel.open(Paths.get(_mappedInput));
+             FileChannel out = FileChannel.open(
+                 Paths.get(_mappedOutput), StandardOpenOption.WRITE,
+                 StandardOpenOption.CREATE,
+                 StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer src =
+                in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+            ByteBuffer dst = ByteBuffer.allocateDirect(MAPPED_OUTPUT_BUFFER);
+            try {
+                checkMappedStart(src);
+                int[] index = new int[256];
+                byte[] chars = new byte[_alphabet.size()];
+                Arrays.fill(index, -1);
+                for (int i = 0; i < chars.length; i++) {
+                    chars[i] = (byte) _alphabet.toChar(i);
+                    index[chars[i]] = i;
                 }
-
+                for (int pos = 0; pos < src.limit();) {
+                    int end = lineEnd(src, pos);
+                    int needed = 2 * (end - pos) + 2 * separator.length;
+                    if (needed > dst.remaining()) {
+                        drain(dst, out);
+                        if (needed > dst.capacity()) {
+                            dst = ByteBuffer.allocateDirect(needed);
+                        }
+                    }
+                    processMappedLine(mymachine, src, pos, end, dst,
+                                      index, chars, separator);
+                    pos = nextLine(src, end);
+                }
+            } finally {
+                drain(dst, out);
             }
+        } catch (IOException excp) {
+            throw error("could not map %s to %s", _mappedInput,
+                        _mappedOutput);
+        }
+    }
 
+    /** Write the contents of BUF to OUT and clear BUF. */
+    private static void drain(ByteBuffer buf, FileChannel out)
+        throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) {
+            out.write(buf);
+        }
+        buf.clear();
+    }
 
-            if (typennotch.charAt(0) == 'M') {
-                char[] cnotches = new char[typennotch.length() - 1];
-                for (int i = 1; i < typennotch.length(); i++) {
-                    cnotches[i - 1] = typennotch.charAt(i);
+    /** Check that the first non-blank line of SRC is a settings line, as
+     *  process does for _input. */
+    private void checkMappedStart(ByteBuffer src) {
+        for (int pos = 0; pos < src.limit();) {
+            int end = lineEnd(src, pos);
+            String inputline = decode(src, pos, end);
+            if (!inputline.isBlank()) {
+                if (!inputline.strip().split("\\s+")[0].equals("*")) {
+                    throw new EnigmaException("input needs to start with a "
+                                              + "setting");
+                }
+                return;
+            }
+            pos = nextLine(src, end);
+        }
+        throw new EnigmaException("Empty input");
+    }
+
+    /** Apply the line of SRC from START to END to MYMACHINE as processLine
+     *  does, writing the result to DST.  INDEX maps bytes to alphabet
+     *  indices (-1 if absent), CHARS maps indices back to bytes, and
+     *  SEPARATOR ends each output line. */
+    private void processMappedLine(Machine mymachine, ByteBuffer src,
+                                   int start, int end, ByteBuffer dst,
+                                   int[] index, byte[] chars,
+                                   byte[] separator) {
+        for (int i = start; i < end; i++) {
+            if (src.get(i) == '*') {
+                setUp(mymachine, decode(src, start, end).substring(1));
+                return;
+            }
+        }
+        if (start == end) {
+            dst.put(separator);
+            return;
+        }
+        for (int i = start; i < end; i++) {
+            byte b = src.get(i);
+            if (b != ' ' && index[b & 0xff] < 0) {
+                throw new EnigmaException("bad message");
+            }
+        }
+        int count = 0;
+        int written = 0;
+        for (int i = start; i < end; i++) {
+            byte b = src.get(i);
+            if (b != ' ') {
+                dst.put(chars[mymachine.convert(index[b])]);
+                written += 1;
+                count += 1;
+                if (count == 5) {
+                    dst.put((byte) ' ');
+                    count = 0;
                 }
-                String snotches = new String(cnotches);
-                thisrotor = new MovingRotor(name,
-                        new Permutation(cycles, _alphabet), snotches);
-            } else if (typennotch.charAt(0) == 'N') {
-                thisrotor = new FixedRotor(name,
-                        new Permutation(cycles, _alphabet));
-            } else {
-                thisrotor = new Reflector(name,
-                        new Permutation(cycles, _alphabet));
             }
+        }
+        if (written == 0) {
+            dst.put(separator);
+        }
+        dst.put(separator);
+    }
+
+    /** Return the position of the line terminator (or end) of the line of
+     *  SRC starting at POS.  As for BufferedReader, lines end at '\n',
+     *  '\r' or "\r\n". */
+    private static int lineEnd(ByteBuffer src, int pos) {
+        while (pos < src.limit() && src.get(pos) != '\n'
+               && src.get(pos) != '\r') {
+            pos += 1;
+        }
+        return pos;
+    }
+
+    /** Return the start of the line after the terminator at END in SRC. */
+    private static int nextLine(ByteBuffer src, int end) {
+        if (end + 1 < src.limit() && src.get(end) == '\r'
+            && src.get(end + 1) == '\n') {
+            return end + 2;
+        }
+        return end + 1;
+    }
+
+    /** Return the bytes of SRC from START to END decoded in the default
+     *  charset. */
+    private static String decode(ByteBuffer src, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        src.get(start, bytes);
+        return new String(bytes, Charset.defaultCharset());
+    }
+
+    /** Return an Enigma machine configured from the contents of configuration
+     *  file _config, or a copy of _prototype if I am a daemon's job. */
+    private Machine readConfig() {
+        if (_prototype != null) {
+            _alphabet = _prototype.alphabet();
+            return _prototype.copyConfiguration();
+        }
+        if (_binaryConfig != null) {
+            Machine machine = BinaryConfig.read(Paths.get(_binaryConfig));
+            _alphabet = machine.alphabet();
+            return machine;
+        }
+        Collection<Rotor> allrotors = new ArrayList<>();
+        readHeader();
+        while (_config.hasMore()) {
+            allrotors.add(readRotor());
+        }
+        return new Machine(_alphabet, _numrotors, _numpawls, allrotors);
+    }
 
+    /** Read the alphabet, number of rotors and number of pawls from the
+     *  start of _config. */
+    private void readHeader() {
+        _alphabet = _config.readAlphabet();
+        _numrotors = _config.readInt("wrong numrotor format");
+        _numpawls = _config.readInt("wrong numpawls format");
+    }
 
-            return thisrotor;
-        } catch (NoSuchElementException excp) {
-            throw error("bad rotor description");
+    /** Return a rotor, reading its description from _config.  Reads the
+     *  configuration header first if that has not been done yet. */
+    public Rotor readRotor() {
+        if (_alphabet == null) {
+            readHeader();
         }
+        return _config.readRotor(_alphabet);
     }
 
     /** Set M according to the specification given on SETTINGS,
      *  which must have the format specified in the assignment. */
     private void setUp(Machine M, String settings) {
-        Scanner thesettings = new Scanner(settings);
-        ArrayList<String> rotorsnsetting = new ArrayList<>();
-        if (!thesettings.hasNextLine()) {
-            throw new EnigmaException("settings file empty");
-        }
-        while (!thesettings.hasNext("\\([A-Z]+\\)")
-                && thesettings.hasNext()) {
-            String temp = thesettings.next();
-            rotorsnsetting.add(temp);
-        }
-        if ((rotorsnsetting.get(rotorsnsetting.size() - 1).length()
-                == rotorsnsetting.get(rotorsnsetting.size() - 2).length())
-                && !(rotorsnsetting.get(rotorsnsetting.size()
-                - 1).equals("AAAZ"))) {
-            rsetting = rotorsnsetting.get(rotorsnsetting.size() - 1);
-            rotorsnsetting.remove(rotorsnsetting.size() - 1);
-        }
-        if (rotorsnsetting.size() < M.numRotors() + 1) {
-            throw new EnigmaException("rotor size doesn't match or "
-                    + "missing initial settings");
-        }
-        if (rotorsnsetting.size() > M.numRotors() + 1) {
-            throw new EnigmaException("too many rotors in settings");
-        }
-        String[] mrotors = new String[rotorsnsetting.size() - 1];
-        for (int i = 0; i < rotorsnsetting.size() - 1; i++) {
-            mrotors[i] = rotorsnsetting.get(i);
-        }
-        M.insertRotors(mrotors);
+        Settings parsed = new Settings(settings, M.numRotors());
+        if (parsed.rings() != null) {
+            rsetting = parsed.rings();
+        }
+        List<String> names = Arrays.asList(parsed.rotors());
+        M.insertRotors(_rotorOrders.get(names, k -> M.selectRotors(
+            parsed.rotors())));
         if (!rsetting.isEmpty()) {
             M.setRings(rsetting);
         }
 
-        M.setRotors(rotorsnsetting.get(rotorsnsetting.size() - 1));
-        if (thesettings.hasNext()) {
-            String plugboardcycles = thesettings.nextLine();
-            Permutation plugboardsetting = new Permutation(plugboardcycles,
-                    _alphabet);
-            M.setPlugboard(plugboardsetting);
-        } else {
-            Permutation noplugboard = new Permutation("", _alphabet);
-            M.setPlugboard(noplugboard);
-        }
+        M.setRotors(parsed.setting());
+        String cycles = Permutation.normalize(parsed.plugboard());
+        M.setPlugboard(_plugboards.get(cycles,
+                                       k -> new Permutation(k, _alphabet)));
+    }
+
+    /** Return the cache of plugboards, keyed by normalized cycles. */
+    LruCache<String, Permutation> plugboardCache() {
+        return _plugboards;
+    }
 
+    /** Return the cache of validated rotor selections, keyed by rotor
+     *  names. */
+    LruCache<List<String>, Rotor[]> rotorOrderCache() {
+        return _rotorOrders;
     }
 
     /** Print MSG in groups of five (except that the last group may
      *  have fewer letters). */
     private void printMessageLine(String msg) {
-
-        Scanner inputscanner = new Scanner(msg);
-        String output = "";
-        if (!inputscanner.hasNext()) {
-            _output.println(output);
+        int needed = msg.length() + msg.length() / 5;
+        if (_line.length < needed) {
+            _line = new char[Math.max(needed, 2 * _line.length)];
+        }
+        int len = groupMessage(msg, _line);
+        if (len == 0) {
+            _output.println();
         }
+        _output.write(_line, 0, len);
+        _output.println();
+    }
+
+    /** Write the non-space characters of MSG into OUT in groups of five,
+     *  each full group followed by a space, and return the number of
+     *  characters written.  OUT must have room for
+     *  MSG.length() + MSG.length() / 5 characters. */
+    static int groupMessage(String msg, char[] out) {
+        int len = 0;
         int count = 0;
         for (int i = 0; i < msg.length(); i++) {
-            if (msg.charAt(i) != ' ') {
-                output += msg.charAt(i);
+            char ch = msg.charAt(i);
+            if (ch != ' ') {
+                out[len++] = ch;
                 count += 1;
-            }
-            if (count == 5) {
-                output += " ";
-                count = 0;
+                if (count == 5) {
+                    out[len++] = ' ';
+                    count = 0;
+                }
             }
         }
-        _output.println(output);
+        return len;
     }
 
     /** Alphabet used in this machine. */
     private Alphabet _alphabet;
 
+    /** Number of rotor slots given in _config. */
+    private int _numrotors;
+
+    /** Number of pawls given in _config. */
+    private int _numpawls;
+
     /** Source of input messages. */
-    private Scanner _input;
+    private BufferedReader _input;
 
     /** Source of machine configuration. */
-    private Scanner _config;
+    private ConfigParser _config;
 
     /** File for encoded/decoded messages. */
-    private PrintStream _output;
+    private PrintWriter _output;
     /** Rsetting string if there is one. */
     private String rsetting = new String();
+
+    /** Plugboards of recent settings lines, keyed by normalized cycles.
+     *  Weights estimate bytes used. */
+    private final LruCache<String, Permutation> _plugboards =
+        new LruCache<>(CACHE_CAPACITY, p -> 64 + 8 * p.size());
+
+    /** Rotor selections of recent settings lines, keyed by rotor names.
+     *  Weights estimate bytes used. */
+    private final LruCache<List<String>, Rotor[]> _rotorOrders =
+        new LruCache<>(CACHE_CAPACITY, r -> 32 + 8 * r.length);
+
+    /** Capacity of each of the settings caches. */
+    private static final long CACHE_CAPACITY = 1 << 22;
+
+    /** Reusable buffer for formatting message lines. */
+    private char[] _line = new char[BUFFER_SIZE];
+
+    /** Input file for --mapped, or null when streaming. */
+    private String _mappedInput;
+
+    /** Output file for --mapped, or null when streaming. */
+    private String _mappedOutput;
+
+    /** Precompiled configuration file, or null if _config is used. */
+    private String _binaryConfig;
+
+    /** Configuration of the daemon running me, or null if I am not a
+     *  daemon's job. */
+    private Machine _prototype;
+
+    /** Socket file for --daemon, or null. */
+    private String _daemonSocket;
+
+    /** Port for --serve, or -1. */
+    private int _servePort = -1;
+
+    /** Socket file for --submit, or null. */
+    private String _submitSocket;
+
+    /** Input file for --submit. */
+    private String _submitInput;
+
+    /** Output file for --submit. */
+    private String _submitOutput;
+
+    /** Output file for --compile, or null when processing messages. */
+    private String _compileOutput;
+
+    /** Command-line option selecting configuration compilation. */
+    static final String COMPILE_OPTION = "--compile";
+
+    /** Command-line option selecting daemon mode. */
+    static final String DAEMON_OPTION = "--daemon";
+
+    /** Command-line option selecting the encryption server. */
+    static final String SERVE_OPTION = "--serve";
+
+    /** Largest TCP port number. */
+    private static final int MAX_PORT = (1 << 16) - 1;
+
+    /** Command-line option submitting a job to a daemon. */
+    static final String SUBMIT_OPTION = "--submit";
+
+    /** Command-line option selecting memory-mapped processing. */
+    static final String MAPPED_OPTION = "--mapped";
+
+    /** Largest input processed by --mapped, chosen so that an upper bound
+     *  on the output of any one of its lines fits in one buffer. */
+    private static final long MAX_MAPPED_INPUT = Integer.MAX_VALUE / 2 - 16;
+
+    /** Size in bytes of the buffer --mapped collects output in. */
+    private static final int MAPPED_OUTPUT_BUFFER = 1 << 20;
+
+    /** Message lines at least this long are converted in parallel. */
+    private static final int PARALLEL_LINE = 4 * Machine.MIN_SEGMENT;
+
+    /** Size in characters of the input and output buffers. */
+    private static final int BUFFER_SIZE = 1 << 16;
 }
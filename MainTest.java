@@ -1,7 +1,13 @@
 package enigma;
 
 import org.junit.Test;
+import static org.junit.Assert.*;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
 
 public class MainTest {
 
@@ -14,5 +20,81 @@ public class MainTest {
 
     }
 
+    @Test
+    public void groupMessageTest() {
+        String msg = "QVPQ SOK OILPUBKJ ZPISFXDW";
+        char[] out = new char[msg.length() + msg.length() / 5];
+        int len = Main.groupMessage(msg, out);
+        assertEquals("QVPQS OKOIL PUBKJ ZPISF XDW", new String(out, 0, len));
+        len = Main.groupMessage("ABCDE", out);
+        assertEquals("ABCDE ", new String(out, 0, len));
+        assertEquals(0, Main.groupMessage("   ", out));
+    }
+
+    @Test
+    public void settingsCacheTest() throws IOException {
+        Path in = Files.createTempFile("enigma", ".in");
+        Path out = Files.createTempFile("enigma", ".out");
+        try {
+            Files.writeString(in, "* B Beta III IV I AXLE (HQ) (EX) (IP)\n"
+                              + "FROM HIS\n"
+                              + "* B Beta III IV I AXLE (HQ) (EX) (IP)\n"
+                              + "SHOULDER\n"
+                              + "* B Beta III IV I AXLE (XE) (PI) (QH)\n"
+                              + "HIAWATHA\n");
+            Main thismain = new Main(new String[] {
+                    "enigma/default.conf", in.toString(), out.toString() });
+            thismain.process();
+            assertEquals(1, thismain.plugboardCache().misses());
+            assertEquals(2, thismain.plugboardCache().hits());
+            assertEquals(1, thismain.rotorOrderCache().misses());
+            assertEquals(2, thismain.rotorOrderCache().hits());
+        } finally {
+            Files.delete(in);
+            Files.delete(out);
+        }
+    }
+
+    @Test
+    public void mappedMatchesStreamingTest() throws IOException {
+        Random random = new Random(61);
+        StringBuilder input = new StringBuilder("\n  \n");
+        String[] settings = {
+            "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)",
+            "*  C   Gamma VI I VIII XDYL BQZA (AQ) (MZ)",
+            "* B Beta I II III AAAA",
+        };
+        for (String setting : settings) {
+            input.append(setting).append("\n");
+            for (int line = 0; line < 40; line += 1) {
+                int len = line == 20 ? 4 * Machine.MIN_SEGMENT + 3
+                    : random.nextInt(3) == 0 ? 0 : random.nextInt(80);
+                for (int i = 0; i < len; i += 1) {
+                    input.append(random.nextInt(4) == 0 ? ' '
+                                 : (char) ('A' + random.nextInt(26)));
+                }
+                input.append(random.nextInt(5) == 0 ? "\r\n" : "\n");
+            }
+            input.append("\n\n");
+        }
+        Path in = Files.createTempFile("enigma", ".in");
+        Path streamed = Files.createTempFile("enigma", ".out");
+        Path mapped = Files.createTempFile("enigma", ".out");
+        try {
+            Files.writeString(in, input);
+            Main.main("enigma/default.conf", in.toString(),
+                      streamed.toString());
+            Main.main("--mapped", "enigma/default.conf", in.toString(),
+                      mapped.toString());
+            assertTrue(Arrays.equals(Files.readAllBytes(streamed),
+                                     Files.readAllBytes(mapped)));
+            assertTrue(Files.size(mapped) > 4 * Machine.MIN_SEGMENT);
+        } finally {
+            Files.delete(in);
+            Files.delete(streamed);
+            Files.delete(mapped);
+        }
+    }
+
 
 }
@@ -15,6 +15,20 @@ class MovingRotor extends Rotor {
     MovingRotor(String name, Permutation perm, String notches) {
         super(name, perm);
         _notch = notches;
+        _notches = new boolean[perm.size()];
+        for (int i = 0; i < notches.length(); i++) {
+            _notches[alphabet().toInt(notches.charAt(i))] = true;
+        }
+        _toNotch = new int[perm.size()];
+        int next = -1;
+        for (int k = 2 * _toNotch.length - 1; k >= 0; k--) {
+            if (_notches[k % _toNotch.length]) {
+                next = k;
+            }
+            if (k < _toNotch.length) {
+                _toNotch[k] = next < 0 ? -1 : next - k;
+            }
+        }
     }
 
 
@@ -25,6 +39,16 @@ class MovingRotor extends Rotor {
         set(nextsettingmod);
     }
 
+    @Override
+    void advance(int k) {
+        set(this.permutation().wrap(this.setting() + k));
+    }
+
+    @Override
+    int advancesToNotch() {
+        return _toNotch[setting()];
+    }
+
     @Override
     boolean rotates() {
         return true;
@@ -32,12 +56,12 @@ class MovingRotor extends Rotor {
 
     @Override
     boolean atNotch() {
-        for (int i = 0; i < _notch.length(); i++) {
-            if (alphabet().toInt(_notch.charAt(i)) == this.setting()) {
-                return true;
-            }
-        }
-        return false;
+        return _notches[setting()];
+    }
+
+    @Override
+    boolean notchAt(int posn) {
+        return _notches[posn];
     }
 
     @Override
@@ -47,6 +71,11 @@ class MovingRotor extends Rotor {
 
     /** Stores the notches of the rotor. */
     private String _notch;
+    /** Entry K is true iff setting K is at a notch. */
+    private final boolean[] _notches;
+    /** Entry K is the number of advances from setting K to the next notch,
+     *  or -1 if there are no notches. */
+    private final int[] _toNotch;
 
 
 }
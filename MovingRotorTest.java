@@ -64,6 +64,27 @@ public class MovingRotorTest {
         checkRotor("Rotor I advanced", UPPER_STRING, NAVALB_MAP.get("I"));
     }
 
-
+    @Test
+    public void checkCompiledMatchesUncompiled() {
+        setRotor("V", NAVALA, "Z");
+        Rotor plain = new MovingRotor("V", new Permutation(NAVALA.get("V"),
+                                                           UPPER), "Z");
+        plain.setCompiled(false);
+        assertTrue(rotor.compiled());
+        assertFalse(plain.compiled());
+        for (int ring = 0; ring < UPPER.size(); ring += 1) {
+            rotor.rset(UPPER.toChar(ring));
+            plain.rset(UPPER.toChar(ring));
+            for (int posn = 0; posn < UPPER.size(); posn += 1) {
+                rotor.set(posn);
+                plain.set(posn);
+                for (int p = 0; p < UPPER.size(); p += 1) {
+                    assertEquals(plain.convertForward(p),
+                                 rotor.convertForward(p));
+                    assertEquals(plain.convertBackward(p),
+                                 rotor.convertBackward(p));
+                }
+            }
+        }
+    }
 }
-
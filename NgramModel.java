@@ -0,0 +1,90 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** Log probabilities of the N-letter sequences (n-grams) of a language
+ *  over an alphabet, estimated from a sample text, for scoring trial
+ *  decryptions.  Characters of the sample that are not in the alphabet
+ *  are skipped.  N-grams that never occur get a small floor probability,
+ *  so that one unseen n-gram cannot rule out a decryption.
+ *  @author Xuanyi Zhang
+ */
+final class NgramModel {
+
+    /** A model of the N-grams over ALPHABET in CORPUS. */
+    NgramModel(Alphabet alphabet, int n, String corpus) {
+        if (n < 1 || Math.pow(alphabet.size(), n) > MAX_TABLE) {
+            throw error("cannot model %d-grams over %d letters", n,
+                        alphabet.size());
+        }
+        _n = n;
+        _size = alphabet.size();
+        int entries = 1;
+        for (int i = 0; i < n; i++) {
+            entries *= _size;
+        }
+        long[] counts = new long[entries];
+        long total = 0;
+        int index = 0, length = 0;
+        for (int i = 0; i < corpus.length(); i++) {
+            char ch = corpus.charAt(i);
+            if (alphabet.contains(ch)) {
+                index = index % (entries / _size) * _size
+                    + alphabet.toInt(ch);
+                length += 1;
+                if (length >= n) {
+                    counts[index] += 1;
+                    total += 1;
+                }
+            }
+        }
+        if (total == 0) {
+            throw error("corpus has no %d-grams", n);
+        }
+        _logp = new double[entries];
+        double floor = Math.log(FLOOR / total);
+        for (int i = 0; i < entries; i++) {
+            _logp[i] = counts[i] == 0
+                ? floor : Math.log((double) counts[i] / total);
+        }
+    }
+
+    /** Return N, the length of my n-grams. */
+    int order() {
+        return _n;
+    }
+
+    /** Return the log probability of the n-gram of TEXT starting at
+     *  POSITION, whose letters are alphabet indices. */
+    double logp(int[] text, int position) {
+        int index = 0;
+        for (int i = position; i < position + _n; i++) {
+            index = index * _size + text[i];
+        }
+        return _logp[index];
+    }
+
+    /** Return the sum of the log probabilities of the n-grams of TEXT that
+     *  start at FROM .. TO-1 and lie within its first LENGTH letters. */
+    double score(int[] text, int length, int from, int to) {
+        double result = 0;
+        int end = Math.min(to, length - _n + 1);
+        for (int i = Math.max(from, 0); i < end; i++) {
+            result += logp(text, i);
+        }
+        return result;
+    }
+
+    /** Log probabilities indexed by n-gram, read as a number in base
+     *  _size, first letter most significant. */
+    private final double[] _logp;
+    /** Length of my n-grams. */
+    private final int _n;
+    /** Size of my alphabet. */
+    private final int _size;
+
+    /** Count assumed for n-grams that do not occur in the corpus. */
+    private static final double FLOOR = 0.01;
+    /** Largest number of n-grams modeled. */
+    private static final double MAX_TABLE = 1 << 24;
+}
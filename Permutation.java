@@ -1,6 +1,8 @@
 package enigma;
-import java.util.HashMap;
-import java.util.Map.Entry;
+
+import java.util.Arrays;
+import java.util.Objects;
+
 import static enigma.EnigmaException.*;
 
 /** Represents a permutation of a range of integers starting at 0 corresponding
@@ -16,34 +18,88 @@ class Permutation {
      *  Whitespace is ignored. */
     Permutation(String cycles, Alphabet alphabet) {
         _alphabet = alphabet;
-        if (cycles.equals("")) {
-            _Cycles = new HashMap<Character, Character>();
-        } else {
+        _forward = new int[alphabet.size()];
+        _inverse = new int[alphabet.size()];
+        for (int i = 0; i < _forward.length; i++) {
+            _forward[i] = -1;
+        }
+        if (!cycles.equals("")) {
             String cleancycles = cycles;
             cleancycles = cleancycles.replace(" ", "");
             cleancycles = cleancycles.replace("(", "");
-            String cleancyclescopy = cleancycles.replace(")", "");
             String[] indicycles = cleancycles.split("\\)", 0);
             for (String a:indicycles) {
                 addCycle(a);
             }
         }
+        for (int i = 0; i < _forward.length; i++) {
+            if (_forward[i] == -1) {
+                _forward[i] = i;
+            }
+            _inverse[_forward[i]] = i;
+        }
+    }
+
+    /** A permutation of the indices of ALPHABET that maps K to FORWARD[K]
+     *  and whose inverse maps K to INVERSE[K].  The arrays are copied, and
+     *  must be mutually inverse permutations of 0 .. ALPHABET.size()-1. */
+    Permutation(int[] forward, int[] inverse, Alphabet alphabet) {
+        _alphabet = alphabet;
+        if (forward.length != alphabet.size()
+            || inverse.length != alphabet.size()) {
+            throw error("permutation tables do not match alphabet");
+        }
+        _forward = forward.clone();
+        _inverse = inverse.clone();
+        for (int i = 0; i < _forward.length; i++) {
+            if (_forward[i] < 0 || _forward[i] >= _forward.length
+                || _inverse[_forward[i]] != i) {
+                throw error("permutation tables are not inverses");
+            }
+        }
+    }
+
+    /** Return a canonical form of CYCLES, a string in the form accepted by
+     *  the constructor: cycles that denote the same permutation have the
+     *  same canonical form, as long as no character is repeated.  Spaces
+     *  are dropped, each cycle starts with its least character, and the
+     *  cycles are sorted. */
+    static String normalize(String cycles) {
+        String cleancycles = cycles.replace(" ", "").replace("(", "");
+        if (cleancycles.isEmpty()) {
+            return "";
+        }
+        String[] indicycles = cleancycles.split("\\)", 0);
+        for (int k = 0; k < indicycles.length; k++) {
+            String cycle = indicycles[k];
+            int least = 0;
+            for (int i = 1; i < cycle.length(); i++) {
+                if (cycle.charAt(i) < cycle.charAt(least)) {
+                    least = i;
+                }
+            }
+            indicycles[k] = cycle.substring(least) + cycle.substring(0, least);
+        }
+        Arrays.sort(indicycles);
+        StringBuilder result = new StringBuilder();
+        for (String cycle : indicycles) {
+            result.append('(').append(cycle).append(')');
+        }
+        return result.toString();
     }
 
     /** Add the cycle c0->c1->...->cm->c0 to the permutation, where CYCLE is
      *  c0c1...cm. */
     private void addCycle(String cycle) {
-        _cycle = cycle;
-        if (cycle.length() > 1) {
-            for (int i = 0; i < cycle.length() - 1; i++) {
-                _Cycles.put(_cycle.charAt(i), _cycle.charAt(i + 1));
+        for (int i = 0; i < cycle.length(); i++) {
+            int from = _alphabet.toInt(cycle.charAt(i));
+            int to = _alphabet.toInt(cycle.charAt((i + 1) % cycle.length()));
+            if (_forward[from] != -1) {
+                throw error("character %c appears in more than one cycle",
+                            cycle.charAt(i));
             }
-            _Cycles.put(_cycle.charAt(cycle.length() - 1), _cycle.charAt(0));
-        } else {
-            _Cycles.put(_cycle.charAt(0), _cycle.charAt(0));
+            _forward[from] = to;
         }
-
-
     }
 
     /** Return the value of P modulo the size of this permutation. */
@@ -63,58 +119,54 @@ class Permutation {
     /** Return the result of applying this permutation to P modulo the
      *  alphabet size. */
     int permute(int p) {
-        int result;
-        Character rchar;
-        Character from = _alphabet.toChar(wrap(p));
-        if (_Cycles.containsKey(from)) {
-            rchar = _Cycles.get(from);
-            result = _alphabet.toInt(rchar);
-        } else {
-            result = p;
-        }
-        return result;
+        return _forward[wrap(p)];
     }
 
     /** Return the result of applying the inverse of this permutation
      *  to  C modulo the alphabet size. */
     int invert(int c) {
-        int result = c;
-        char charind;
-        char frominv = _alphabet.toChar(wrap(c));
-
-        for (Entry<Character, Character> entry:_Cycles.entrySet()) {
-            if (entry.getValue() == frominv) {
-                charind = entry.getKey();
-                result = _alphabet.toInt(charind);
-                break;
-            }
-        }
+        return _inverse[wrap(c)];
+    }
 
-        return result;
+    /** Apply this permutation to each of the LEN entries of BLOCK starting
+     *  at OFF, in place.  Each entry must be in the range 0..size()-1.
+     *  The loop is a plain table gather with no wrapping, which the JIT
+     *  unrolls and can vectorize. */
+    void permute(int[] block, int off, int len) {
+        apply(_forward, block, off, len);
+    }
+
+    /** Apply the inverse of this permutation to each of the LEN entries
+     *  of BLOCK starting at OFF, in place, as for permute(int[], int,
+     *  int). */
+    void invert(int[] block, int off, int len) {
+        apply(_inverse, block, off, len);
+    }
+
+    /** Replace each of the LEN entries of BLOCK starting at OFF by the
+     *  entry of TABLE it indexes. */
+    private static void apply(int[] table, int[] block, int off, int len) {
+        Objects.checkFromIndexSize(off, len, block.length);
+        for (int i = off; i < off + len; i++) {
+            block[i] = table[block[i]];
+        }
     }
 
     /** Return the result of applying this permutation to the index of P
      *  in ALPHABET, and converting the result to a character of ALPHABET. */
     char permute(char p) {
-        if (_Cycles.containsKey(p)) {
-            return _Cycles.get(p);
-        } else {
+        if (!_alphabet.contains(p)) {
             return p;
         }
+        return _alphabet.toChar(_forward[_alphabet.toInt(p)]);
     }
 
     /** Return the result of applying the inverse of this permutation to C. */
     char invert(char c) {
-        char charinv = c;
-        for (Entry<Character, Character> entry:_Cycles.entrySet()) {
-            if (entry.getValue() == c) {
-                charinv = entry.getKey();
-                break;
-            }
+        if (!_alphabet.contains(c)) {
+            return c;
         }
-
-
-        return charinv;
+        return _alphabet.toChar(_inverse[_alphabet.toInt(c)]);
     }
 
     /** Return the alphabet used to initialize this Permutation. */
@@ -135,10 +187,8 @@ class Permutation {
 
     /** Alphabet of this permutation. */
     private Alphabet _alphabet;
-    /** HashMap which keys are the input character
-     * that maps to the values which are the output character in the wire. */
-    private HashMap<Character, Character> _Cycles =
-            new HashMap<Character, Character>();
-    /** The individual permutation cycle in string format. */
-    private String _cycle;
+    /** Index K holds the index that K is mapped to in the wire. */
+    private final int[] _forward;
+    /** The inverse of _forward: index K holds the index mapped to K. */
+    private final int[] _inverse;
 }
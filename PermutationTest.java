@@ -148,4 +148,54 @@ public class PermutationTest {
         assertFalse(p1.derangement());
         assertTrue(p2.derangement());
     }
+
+    @Test
+    public void testInverseTableMatchesForward() {
+        Alphabet alpha = getNewAlphabet();
+        Permutation perm = getNewPermutation(NAVALA.get("I"), alpha);
+        for (int i = 0; i < alpha.size(); i += 1) {
+            assertEquals(i, perm.invert(perm.permute(i)));
+            assertEquals(i, perm.permute(perm.invert(i)));
+        }
+        assertEquals(alpha.size() - 1, perm.permute(perm.invert(-1)));
+    }
+
+    @Test
+    public void testBulkPermute() {
+        Alphabet alpha = getNewAlphabet();
+        Permutation perm = getNewPermutation(NAVALA.get("I"), alpha);
+        int[] block = new int[alpha.size() + 2];
+        for (int i = 0; i < block.length; i += 1) {
+            block[i] = i % alpha.size();
+        }
+        perm.permute(block, 1, alpha.size());
+        assertEquals(0, block[0]);
+        for (int i = 1; i <= alpha.size(); i += 1) {
+            assertEquals(perm.permute(i % alpha.size()), block[i]);
+        }
+        assertEquals(1, block[alpha.size() + 1]);
+        perm.invert(block, 1, alpha.size());
+        for (int i = 0; i < block.length; i += 1) {
+            assertEquals(i % alpha.size(), block[i]);
+        }
+    }
+
+    @Test
+    public void testNormalize() {
+        assertEquals(Permutation.normalize("(HQ) (EX) (IP)"),
+                     Permutation.normalize("(XE)(IP) (QH)"));
+        assertEquals(Permutation.normalize("(ABC)"),
+                     Permutation.normalize(" (CAB) "));
+        assertFalse(Permutation.normalize("(ABC)").equals(
+                        Permutation.normalize("(ACB)")));
+        assertEquals("", Permutation.normalize(""));
+        Permutation perm = new Permutation(Permutation.normalize(
+                                               NAVALA.get("I")), UPPER);
+        assertEquals(NAVALA_MAP.get("I").charAt(7), perm.permute('H'));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testCycleCharNotInAlphabet() {
+        getNewPermutation("(AB) (CZ)", getNewAlphabet("ABCDEFG"));
+    }
 }
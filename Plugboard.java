@@ -0,0 +1,157 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** A mutable plugboard: an involution of the indices of an alphabet, each
+ *  index either unplugged (mapped to itself) or wired to one partner.
+ *  Unlike a Permutation, it can be rewired in constant time without
+ *  allocating, for searches that try many plugboards against one set of
+ *  rotor settings.  The most recent swap can be undone.
+ *  @author Xuanyi Zhang
+ */
+final class Plugboard {
+
+    /** A plugboard over ALPHABET with nothing plugged. */
+    Plugboard(Alphabet alphabet) {
+        _alphabet = alphabet;
+        _wiring = new int[alphabet.size()];
+        clear();
+    }
+
+    /** A plugboard wired as PERM, which must be an involution. */
+    Plugboard(Permutation perm) {
+        this(perm.alphabet());
+        for (int c = 0; c < _wiring.length; c++) {
+            int p = perm.permute(c);
+            if (perm.permute(p) != c) {
+                throw error("plugboard must swap letters in pairs");
+            }
+            _wiring[c] = p;
+            if (p > c) {
+                _pairs += 1;
+            }
+        }
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the size of my alphabet. */
+    int size() {
+        return _wiring.length;
+    }
+
+    /** Return the number of pairs plugged. */
+    int pairs() {
+        return _pairs;
+    }
+
+    /** Return the index that C (an index in my alphabet) is wired to. */
+    int permute(int c) {
+        return _wiring[c];
+    }
+
+    /** Unplug everything, and forget the last swap. */
+    void clear() {
+        for (int c = 0; c < _wiring.length; c++) {
+            _wiring[c] = c;
+        }
+        _pairs = 0;
+        _undoable = false;
+    }
+
+    /** Wire A and B together, first unplugging their old partners.  If A
+     *  and B are already wired together, unplug them instead.  A and B are
+     *  distinct indices in my alphabet. */
+    void swap(int a, int b) {
+        if (a == b) {
+            throw error("cannot plug a letter to itself");
+        }
+        int[] wiring = _wiring;
+        int pa = wiring[a], pb = wiring[b];
+        _lastA = a;
+        _lastB = b;
+        _lastPa = pa;
+        _lastPb = pb;
+        _lastPairs = _pairs;
+        _undoable = true;
+        if (pa == b) {
+            wiring[a] = a;
+            wiring[b] = b;
+            _pairs -= 1;
+            return;
+        }
+        if (pa != a) {
+            wiring[pa] = pa;
+            _pairs -= 1;
+        }
+        if (pb != b) {
+            wiring[pb] = pb;
+            _pairs -= 1;
+        }
+        wiring[a] = b;
+        wiring[b] = a;
+        _pairs += 1;
+    }
+
+    /** Return the number of pairs I would have after swap(A, B). */
+    int pairsAfterSwap(int a, int b) {
+        int pa = _wiring[a], pb = _wiring[b];
+        if (pa == b) {
+            return _pairs - 1;
+        }
+        return _pairs + 1 - (pa != a ? 1 : 0) - (pb != b ? 1 : 0);
+    }
+
+    /** Undo the last swap.  It can be undone only once, and only if I
+     *  have not been cleared since. */
+    void unswap() {
+        if (!_undoable) {
+            throw error("no swap to undo");
+        }
+        int[] wiring = _wiring;
+        wiring[_lastA] = _lastPa;
+        wiring[_lastPa] = _lastA;
+        wiring[_lastB] = _lastPb;
+        wiring[_lastPb] = _lastB;
+        _pairs = _lastPairs;
+        _undoable = false;
+    }
+
+    /** Return a Permutation wired as I am now. */
+    Permutation toPermutation() {
+        return new Permutation(_wiring, _wiring, _alphabet);
+    }
+
+    /** Return my pairs in cycle notation, "(AB) (CD) ...", ordered by
+     *  their first letters, as accepted by Permutation. */
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        for (int c = 0; c < _wiring.length; c++) {
+            if (_wiring[c] > c) {
+                if (result.length() > 0) {
+                    result.append(' ');
+                }
+                result.append('(').append(_alphabet.toChar(c))
+                    .append(_alphabet.toChar(_wiring[c])).append(')');
+            }
+        }
+        return result.toString();
+    }
+
+    /** My alphabet. */
+    private final Alphabet _alphabet;
+    /** Index C holds the index C is wired to. */
+    private final int[] _wiring;
+    /** Number of pairs plugged. */
+    private int _pairs;
+    /** The arguments of the last swap and their partners before it. */
+    private int _lastA, _lastB, _lastPa, _lastPb;
+    /** The number of pairs before the last swap. */
+    private int _lastPairs;
+    /** True iff the last swap can be undone. */
+    private boolean _undoable;
+}
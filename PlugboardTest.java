@@ -0,0 +1,103 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Plugboard and RotorCore classes.
+ *  @author Xuanyi Zhang
+ */
+public class PlugboardTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Return the index of C in UPPER. */
+    private static int i(char c) {
+        return UPPER.toInt(c);
+    }
+
+    @Test
+    public void testSwapAndUnswap() {
+        Plugboard P = new Plugboard(new Permutation("(AB) (CD)", UPPER));
+        assertEquals(2, P.pairs());
+        assertEquals(3, P.pairsAfterSwap(i('E'), i('F')));
+        P.swap(i('E'), i('F'));
+        assertEquals("(AB) (CD) (EF)", P.toString());
+        P.unswap();
+        assertEquals("(AB) (CD)", P.toString());
+
+        assertEquals(1, P.pairsAfterSwap(i('A'), i('C')));
+        P.swap(i('A'), i('C'));
+        assertEquals("(AC)", P.toString());
+        assertEquals(i('B'), P.permute(i('B')));
+        P.unswap();
+        assertEquals("(AB) (CD)", P.toString());
+
+        P.swap(i('B'), i('A'));
+        assertEquals("(CD)", P.toString());
+        assertEquals(1, P.pairs());
+        P.unswap();
+        assertEquals(2, P.pairs());
+        assertEquals(i('A'), P.toPermutation().permute(i('B')));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testUnswapTwice() {
+        Plugboard P = new Plugboard(UPPER);
+        P.swap(i('A'), i('Z'));
+        P.unswap();
+        P.unswap();
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testNotInvolution() {
+        new Plugboard(new Permutation("(ABC)", UPPER));
+    }
+
+    @Test
+    public void testRotorCoreMatchesMachine() {
+        Machine core = MachineTest.navalMachine();
+        Machine plain = MachineTest.navalMachine();
+        for (Machine M : new Machine[] { core, plain }) {
+            M.insertRotors(new String[] { "B", "Beta", "III", "IV", "I" });
+            M.setRings("AAAX");
+            M.setRotors("AXLE");
+        }
+        String msg = "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD";
+        int[] text = new int[msg.length()];
+        for (int t = 0; t < text.length; t++) {
+            text[t] = i(msg.charAt(t));
+        }
+        RotorCore R = core.rotorCore(text.length);
+        assertEquals(text.length, R.length());
+
+        Plugboard P = new Plugboard(UPPER);
+        P.swap(i('H'), i('Q'));
+        P.swap(i('E'), i('X'));
+        plain.setPlugboard(P.toPermutation());
+        int[] expected = new int[text.length];
+        for (int t = 0; t < text.length; t++) {
+            expected[t] = plain.convert(text[t]);
+        }
+        int[] converted = new int[text.length];
+        R.convert(text, text.length, P, converted);
+        assertArrayEquals(expected, converted);
+
+        P.swap(i('I'), i('P'));
+        int[] changed = new int[text.length];
+        int[] saved = new int[text.length];
+        int n = R.update(text, text.length, P, converted, changed, saved);
+        assertTrue(n > 0);
+        for (int k = 0; k < n; k++) {
+            assertEquals(expected[changed[k]], saved[k]);
+            assertTrue(saved[k] != converted[changed[k]]);
+        }
+        RotorCore.restore(converted, changed, saved, n);
+        assertArrayEquals(expected, converted);
+    }
+}
@@ -1,11 +1,13 @@
 package enigma;
 
+import java.util.Objects;
+
 import static enigma.EnigmaException.*;
 
 /** Superclass that represents a rotor in the enigma machine.
  *  @author Xuanyi Zhang
  */
-class Rotor {
+class Rotor implements Cloneable {
 
     /** A rotor named NAME whose permutation is given by PERM. */
     Rotor(String name, Permutation perm) {
@@ -13,6 +15,7 @@ class Rotor {
         _permutation = perm;
         _setting = 0;
         _ringstellung = 0;
+        setCompiled(true);
     }
 
     /** Return my name. */
@@ -63,34 +66,135 @@ class Rotor {
     void set(int posn) {
 
         _setting = permutation().wrap(posn);
+        updateShift();
     }
 
     /** Set setting() to character CPOSN. */
     void set(char cposn) {
 
         _setting = alphabet().toInt(cposn);
+        updateShift();
     }
     /** Set ringsetting() to character POSN. */
     void rset(char posn) {
         _ringstellung = alphabet().toInt(posn);
+        updateShift();
+    }
+
+    /** Recompute the offset of my wiring from setting() and rsetting(). */
+    private void updateShift() {
+        _shift = permutation().wrap(_setting - _ringstellung);
+        _tableBase = _shift * size();
+    }
+
+    /** Use precomputed per-position wiring tables iff COMPILED is true and
+     *  my alphabet has at most MAX_COMPILED_SIZE characters.  Otherwise
+     *  each conversion computes its contacts with modular arithmetic. */
+    void setCompiled(boolean compiled) {
+        int n = size();
+        if (!compiled || n > MAX_COMPILED_SIZE) {
+            _forwardTable = _backwardTable = null;
+            return;
+        }
+        _forwardTable = new int[n * n];
+        _backwardTable = new int[n * n];
+        for (int shift = 0; shift < n; shift += 1) {
+            for (int p = 0; p < n; p += 1) {
+                int contact = (p + shift) % n;
+                _forwardTable[shift * n + p] =
+                    permutation().wrap(permutation().permute(contact) - shift);
+                _backwardTable[shift * n + p] =
+                    permutation().wrap(permutation().invert(contact) - shift);
+            }
+        }
+    }
+
+    /** Return my forward wiring table, in which row S, column P (stored
+     *  row-major) is the forward conversion of P when setting() -
+     *  rsetting() is S modulo size().  The result is shared and must not
+     *  be modified. */
+    int[] forwardTable() {
+        checkCompiled();
+        return _forwardTable;
+    }
+
+    /** Return my backward wiring table, laid out as for forwardTable().
+     *  The result is shared and must not be modified. */
+    int[] backwardTable() {
+        checkCompiled();
+        return _backwardTable;
+    }
+
+    /** Throw an exception unless I have wiring tables. */
+    private void checkCompiled() {
+        if (!compiled()) {
+            throw error("rotor %s has no wiring tables", name());
+        }
+    }
+
+    /** Return true iff I convert through precomputed wiring tables. */
+    boolean compiled() {
+        return _forwardTable != null;
     }
 
     /** Return the conversion of P (an integer in the range 0..size()-1)
      *  according to my permutation. */
     int convertForward(int p) {
-        _contact = permutation().wrap(p + (setting() - rsetting()));
-        _convert = permutation().permute(_contact);
-        _output = permutation().wrap(_convert - (setting() - rsetting()));
-        return _output;
+        if (_forwardTable != null) {
+            return _forwardTable[_tableBase + p];
+        }
+        int contact = permutation().wrap(p + _shift);
+        return permutation().wrap(permutation().permute(contact) - _shift);
     }
 
     /** Return the conversion of E (an integer in the range 0..size()-1)
      *  according to the inverse of my permutation. */
     int convertBackward(int e) {
-        _contact = permutation().wrap(e + (setting() - rsetting()));
-        _convert = permutation().invert(_contact);
-        _output = permutation().wrap(_convert - (setting() - rsetting()));
-        return _output;
+        if (_backwardTable != null) {
+            return _backwardTable[_tableBase + e];
+        }
+        int contact = permutation().wrap(e + _shift);
+        return permutation().wrap(permutation().invert(contact) - _shift);
+    }
+
+    /** Return the offset in my wiring tables of the row for my current
+     *  position.  I must be compiled. */
+    int tableBase() {
+        checkCompiled();
+        return _tableBase;
+    }
+
+    /** Convert each of the LEN entries of BLOCK starting at OFF forward,
+     *  in place, as convertForward(int) would with my position at the
+     *  table row BASES[I] for entry I (as returned by tableBase()), or at
+     *  my current position if BASES is null.  I must be compiled. */
+    void convertForward(int[] block, int[] bases, int off, int len) {
+        apply(forwardTable(), block, bases, off, len);
+    }
+
+    /** Convert the LEN entries of BLOCK starting at OFF backward, in
+     *  place, as for convertForward(int[], int[], int, int). */
+    void convertBackward(int[] block, int[] bases, int off, int len) {
+        apply(backwardTable(), block, bases, off, len);
+    }
+
+    /** Replace each of the LEN entries of BLOCK starting at OFF by its
+     *  entry in the row of TABLE at BASES[I], or at my current row if
+     *  BASES is null. */
+    private void apply(int[] table, int[] block, int[] bases,
+                       int off, int len) {
+        Objects.checkFromIndexSize(off, len, block.length);
+        if (bases == null) {
+            int base = _tableBase;
+            for (int i = off; i < off + len; i++) {
+                block[i] = table[base + block[i]];
+            }
+        } else {
+            Objects.checkFromIndexSize(off, len, bases.length);
+            for (int i = off; i < off + len; i++) {
+                block[i] = table[bases[i] + block[i]];
+            }
+        }
     }
 
     /** Returns true iff I am positioned to allow the rotor to my left
@@ -99,10 +203,35 @@ class Rotor {
         return false;
     }
 
+    /** Returns true iff I would be at a notch at setting POSN. */
+    boolean notchAt(int posn) {
+        return false;
+    }
+
     /** Advance me one position, if possible. By default, does nothing. */
     void advance() {
     }
 
+    /** Advance me K positions, as if by K calls to advance(). */
+    void advance(int k) {
+    }
+
+    /** Return the number of advances that would bring me to a notch (0 if
+     *  I am at one), or -1 if I never reach one. */
+    int advancesToNotch() {
+        return -1;
+    }
+
+    /** Return a copy of me with my current settings, sharing my
+     *  (immutable) wiring. */
+    Rotor copy() {
+        try {
+            return (Rotor) clone();
+        } catch (CloneNotSupportedException excp) {
+            throw new AssertionError(excp);
+        }
+    }
+
     @Override
     public String toString() {
         return "Rotor " + _name;
@@ -115,14 +244,20 @@ class Rotor {
     private Permutation _permutation;
     /** My rotor setting. */
     private int _setting;
-    /** The contact point from which the input gets in. */
-    private int _contact;
-    /** The int that the input gets converted to. */
-    private int _convert;
-    /** The output from where the permuted number moves on. */
-    private int _output;
-    /** The output from where the permuted number moves on. */
+    /** My ring setting. */
     private int _ringstellung;
+    /** setting() - rsetting(), modulo size(). */
+    private int _shift;
+    /** Offset of the row for _shift in the wiring tables. */
+    private int _tableBase;
+    /** Row S, column P holds the forward conversion of P when my shift
+     *  is S, stored row-major; null when not compiled. */
+    private int[] _forwardTable;
+    /** As for _forwardTable, for the inverse conversion. */
+    private int[] _backwardTable;
+
+    /** The largest alphabet for which wiring tables are precomputed. */
+    static final int MAX_COMPILED_SIZE = 256;
 
 
 
@@ -0,0 +1,99 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** The substitutions made by the rotors of a machine, without its
+ *  plugboard, at each of a run of consecutive positions.  With a
+ *  Plugboard P, letter C at position T of a message converts to
+ *  P(core(T, P(C))), so once the rotors' part is tabulated, trying
+ *  another plugboard costs three table lookups per letter.  Obtained from
+ *  Machine.rotorCore.
+ *  @author Xuanyi Zhang
+ */
+final class RotorCore {
+
+    /** The core over ALPHABET whose entry T * ALPHABET.size() + C in
+     *  TABLE is the substitution of C at position T.  TABLE is not
+     *  copied. */
+    RotorCore(Alphabet alphabet, int[] table) {
+        if (table.length % alphabet.size() != 0) {
+            throw error("rotor core table does not match alphabet");
+        }
+        _alphabet = alphabet;
+        _size = alphabet.size();
+        _table = table;
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the number of positions I cover. */
+    int length() {
+        return _table.length / _size;
+    }
+
+    /** Return the substitution made by the rotors of C at position T. */
+    int substitute(int t, int c) {
+        return _table[t * _size + c];
+    }
+
+    /** Return the conversion of letter C at position T through
+     *  PLUGBOARD and the rotors. */
+    int convert(int t, int c, Plugboard plugboard) {
+        return plugboard.permute(_table[t * _size + plugboard.permute(c)]);
+    }
+
+    /** Convert the first LEN letters of TEXT (alphabet indices, starting
+     *  at position 0) through PLUGBOARD and the rotors into DST. */
+    void convert(int[] text, int len, Plugboard plugboard, int[] dst) {
+        checkLength(len);
+        for (int t = 0; t < len; t++) {
+            dst[t] = convert(t, text[t], plugboard);
+        }
+    }
+
+    /** Bring the first LEN letters of PLAIN, which hold a conversion of
+     *  TEXT under some plugboard, up to date for PLUGBOARD.  Record each
+     *  position that changes in CHANGED and its old letter in SAVED, in
+     *  increasing order of position, and return the number changed.
+     *  CHANGED and SAVED need room for LEN entries. */
+    int update(int[] text, int len, Plugboard plugboard, int[] plain,
+               int[] changed, int[] saved) {
+        checkLength(len);
+        int n = 0;
+        for (int t = 0; t < len; t++) {
+            int p = convert(t, text[t], plugboard);
+            if (p != plain[t]) {
+                changed[n] = t;
+                saved[n] = plain[t];
+                plain[t] = p;
+                n += 1;
+            }
+        }
+        return n;
+    }
+
+    /** Undo update: restore the N letters of PLAIN at the positions in
+     *  CHANGED to their old values in SAVED. */
+    static void restore(int[] plain, int[] changed, int[] saved, int n) {
+        for (int k = 0; k < n; k++) {
+            plain[changed[k]] = saved[k];
+        }
+    }
+
+    /** Check that I cover at least LEN positions. */
+    private void checkLength(int len) {
+        if (len > length()) {
+            throw error("message longer than rotor core");
+        }
+    }
+
+    /** My alphabet. */
+    private final Alphabet _alphabet;
+    /** The size of my alphabet. */
+    private final int _size;
+    /** Entry T * _size + C is the substitution of C at position T. */
+    private final int[] _table;
+}
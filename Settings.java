@@ -0,0 +1,83 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Scanner;
+
+/** The parsed form of a settings line: the rotors to insert, their
+ *  initial positions, optional ring settings and the plugboard.
+ *  @author Xuanyi Zhang
+ */
+final class Settings {
+
+    /** Parse SETTINGS, a settings line without its leading '*', for a
+     *  machine with NUMROTORS rotor slots. */
+    Settings(String settings, int numRotors) {
+        Scanner thesettings = new Scanner(settings);
+        ArrayList<String> rotorsnsetting = new ArrayList<>();
+        if (!thesettings.hasNextLine()) {
+            throw new EnigmaException("settings file empty");
+        }
+        while (!thesettings.hasNext("\\([A-Z]+\\)")
+                && thesettings.hasNext()) {
+            String temp = thesettings.next();
+            rotorsnsetting.add(temp);
+        }
+        if (rotorsnsetting.size() < 2) {
+            throw new EnigmaException("rotor size doesn't match or "
+                    + "missing initial settings");
+        }
+        if ((rotorsnsetting.get(rotorsnsetting.size() - 1).length()
+                == rotorsnsetting.get(rotorsnsetting.size() - 2).length())
+                && !(rotorsnsetting.get(rotorsnsetting.size()
+                - 1).equals("AAAZ"))) {
+            _rings = rotorsnsetting.get(rotorsnsetting.size() - 1);
+            rotorsnsetting.remove(rotorsnsetting.size() - 1);
+        }
+        if (rotorsnsetting.size() < numRotors + 1) {
+            throw new EnigmaException("rotor size doesn't match or "
+                    + "missing initial settings");
+        }
+        if (rotorsnsetting.size() > numRotors + 1) {
+            throw new EnigmaException("too many rotors in settings");
+        }
+        _rotors = new String[rotorsnsetting.size() - 1];
+        for (int i = 0; i < rotorsnsetting.size() - 1; i++) {
+            _rotors[i] = rotorsnsetting.get(i);
+        }
+        _setting = rotorsnsetting.get(rotorsnsetting.size() - 1);
+        if (thesettings.hasNext()) {
+            _plugboard = thesettings.nextLine();
+        } else {
+            _plugboard = "";
+        }
+    }
+
+    /** Return the names of the rotors to insert, the reflector first. */
+    String[] rotors() {
+        return _rotors.clone();
+    }
+
+    /** Return the initial positions of the rotors after the reflector. */
+    String setting() {
+        return _setting;
+    }
+
+    /** Return the ring settings, or null if none were given. */
+    String rings() {
+        return _rings;
+    }
+
+    /** Return the plugboard in cycle notation ("" if none). */
+    String plugboard() {
+        return _plugboard;
+    }
+
+    /** Names of the rotors, the reflector first. */
+    private final String[] _rotors;
+    /** Initial rotor positions. */
+    private final String _setting;
+    /** Ring settings, or null. */
+    private String _rings;
+    /** Plugboard cycles. */
+    private final String _plugboard;
+}
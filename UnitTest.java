@@ -11,7 +11,19 @@ public class UnitTest {
      *  the arguments of runClasses to run other JUnit tests. */
     public static void main(String[] ignored) {
         System.exit(textui.runClasses(PermutationTest.class,
-                                      MovingRotorTest.class));
+                                      MovingRotorTest.class,
+                                      MachineTest.class,
+                                      CompiledMachineTest.class,
+                                      BatchEngineTest.class,
+                                      LruCacheTest.class,
+                                      BinaryConfigTest.class,
+                                      DaemonTest.class,
+                                      EncryptionServerTest.class,
+                                      KeystreamTest.class,
+                                      CribSearchTest.class,
+                                      CiphertextAttackTest.class,
+                                      PlugboardTest.class,
+                                      BombeTest.class));
     }
 
 }
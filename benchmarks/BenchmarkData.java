@@ -0,0 +1,142 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/** Generators for the configurations and messages used by the
+ *  benchmarks.  Everything is derived from a fixed seed so that runs are
+ *  comparable.
+ *  @author Xuanyi Zhang
+ */
+final class BenchmarkData {
+
+    /** Not instantiable. */
+    private BenchmarkData() {
+    }
+
+    /** The upper-case alphabet. */
+    static final String UPPER = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+
+    /** Return cycle notation for a random permutation of CHARS drawn using
+     *  RANDOM. */
+    static String randomCycles(String chars, Random random) {
+        ArrayList<Character> shuffled = new ArrayList<>();
+        for (char c : chars.toCharArray()) {
+            shuffled.add(c);
+        }
+        java.util.Collections.shuffle(shuffled, random);
+        StringBuilder cycles = new StringBuilder();
+        int i = 0;
+        while (i < shuffled.size()) {
+            int len = 1 + random.nextInt(shuffled.size() - i);
+            cycles.append('(');
+            for (int k = 0; k < len; k += 1) {
+                cycles.append(shuffled.get(i + k));
+            }
+            cycles.append(") ");
+            i += len;
+        }
+        return cycles.toString();
+    }
+
+    /** Return cycle notation for a random derangement of CHARS made of
+     *  pairs, suitable for a reflector.  CHARS must have even length. */
+    static String randomPairs(String chars, Random random) {
+        ArrayList<Character> shuffled = new ArrayList<>();
+        for (char c : chars.toCharArray()) {
+            shuffled.add(c);
+        }
+        java.util.Collections.shuffle(shuffled, random);
+        StringBuilder cycles = new StringBuilder();
+        for (int i = 0; i + 1 < shuffled.size(); i += 2) {
+            cycles.append('(').append(shuffled.get(i))
+                .append(shuffled.get(i + 1)).append(") ");
+        }
+        return cycles.toString();
+    }
+
+    /** Return the text of a configuration file over the upper-case
+     *  alphabet with NUMROTORS slots, all but the reflector moving, and
+     *  NUMROTORS - 1 moving rotors named R1, R2, ... plus a reflector
+     *  named B. */
+    static String config(int numRotors) {
+        return rotorBank(numRotors, numRotors - 1);
+    }
+
+    /** Return the text of a configuration file over the upper-case
+     *  alphabet with NUMROTORS slots, all but the reflector moving, and
+     *  BANKSIZE moving rotors named R1, R2, ... plus a reflector named B.
+     *  Every other rotor's cycles continue onto a second line. */
+    static String rotorBank(int numRotors, int bankSize) {
+        Random random = new Random(61);
+        StringBuilder config = new StringBuilder();
+        config.append(UPPER).append('\n');
+        config.append(numRotors).append(' ')
+            .append(numRotors - 1).append('\n');
+        for (int i = 1; i <= bankSize; i += 1) {
+            String cycles = randomCycles(UPPER, random);
+            int split = cycles.indexOf(") ") + 2;
+            if (i % 2 == 0 && split < cycles.length()) {
+                cycles = cycles.substring(0, split) + "\n    "
+                    + cycles.substring(split);
+            }
+            config.append('R').append(i).append(" M")
+                .append(UPPER.charAt(random.nextInt(UPPER.length())))
+                .append(' ').append(cycles).append('\n');
+        }
+        config.append("B R ").append(randomPairs(UPPER, random))
+            .append('\n');
+        return config.toString();
+    }
+
+    /** Return a settings line (without the leading '*') for a machine
+     *  built from config(NUMROTORS). */
+    static String settings(int numRotors) {
+        StringBuilder settings = new StringBuilder("B");
+        for (int i = 1; i < numRotors; i += 1) {
+            settings.append(" R").append(i);
+        }
+        settings.append(' ');
+        for (int i = 1; i < numRotors; i += 1) {
+            settings.append(UPPER.charAt((7 * i) % UPPER.length()));
+        }
+        return settings.append(" (AQ) (MZ) (CE)").toString();
+    }
+
+    /** Return a machine built from config(NUMROTORS) and set up as by
+     *  settings(NUMROTORS). */
+    static Machine machine(int numRotors) {
+        Random random = new Random(61);
+        Alphabet alpha = new Alphabet(UPPER);
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        String[] names = new String[numRotors];
+        names[0] = "B";
+        rotors.add(new Reflector("B",
+            new Permutation(randomPairs(UPPER, random), alpha)));
+        StringBuilder setting = new StringBuilder();
+        for (int i = 1; i < numRotors; i += 1) {
+            names[i] = "R" + i;
+            rotors.add(new MovingRotor(names[i],
+                new Permutation(randomCycles(UPPER, random), alpha),
+                UPPER.substring(i % UPPER.length(), i % UPPER.length() + 1)));
+            setting.append(UPPER.charAt((7 * i) % UPPER.length()));
+        }
+        Machine machine = new Machine(alpha, numRotors, numRotors - 1,
+                                      rotors);
+        machine.insertRotors(names);
+        machine.setRotors(setting.toString());
+        machine.setPlugboard(new Permutation("(AQ) (MZ) (CE)", alpha));
+        return machine;
+    }
+
+    /** Return a message of LEN upper-case letters and occasional spaces. */
+    static String message(int len) {
+        Random random = new Random(61);
+        char[] msg = new char[len];
+        for (int i = 0; i < len; i += 1) {
+            msg[i] = random.nextInt(6) == 0
+                ? ' ' : UPPER.charAt(random.nextInt(UPPER.length()));
+        }
+        return new String(msg);
+    }
+}
@@ -0,0 +1,81 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** JMH benchmarks for the time to read a configuration, comparing
+ *  ConfigParser with the Scanner-based reader it replaced.
+ *  @author Xuanyi Zhang
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ConfigBenchmark {
+
+    /** Number of rotors in the configuration. */
+    @Param({"10", "1000", "10000"})
+    public int bankSize;
+
+    /** Generate the configuration text. */
+    @Setup
+    public void setUp() {
+        _text = BenchmarkData.rotorBank(5, bankSize);
+    }
+
+    /** Read the configuration with ConfigParser. */
+    @Benchmark
+    public int parser() {
+        ConfigParser config = new ConfigParser(_text);
+        Alphabet alphabet = config.readAlphabet();
+        config.readInt("wrong numrotor format");
+        config.readInt("wrong numpawls format");
+        int count = 0;
+        while (config.hasMore()) {
+            config.readRotor(alphabet);
+            count += 1;
+        }
+        return count;
+    }
+
+    /** Read the configuration with a Scanner, as Main used to. */
+    @Benchmark
+    public int scanner() {
+        Scanner config = new Scanner(_text);
+        Alphabet alphabet = new Alphabet(config.nextLine());
+        config.nextInt();
+        config.nextInt();
+        Collection<Rotor> allrotors = new ArrayList<>();
+        while (config.hasNext()) {
+            String name = config.next();
+            String typennotch = config.next();
+            String cycles = config.nextLine();
+            while (config.hasNext("\\(.+\\)")) {
+                cycles = cycles + config.nextLine();
+            }
+            Permutation perm = new Permutation(cycles, alphabet);
+            if (typennotch.charAt(0) == 'M') {
+                allrotors.add(new MovingRotor(name, perm,
+                                              typennotch.substring(1)));
+            } else if (typennotch.charAt(0) == 'N') {
+                allrotors.add(new FixedRotor(name, perm));
+            } else {
+                allrotors.add(new Reflector(name, perm));
+            }
+        }
+        return allrotors.size();
+    }
+
+    /** The configuration text. */
+    private String _text;
+}
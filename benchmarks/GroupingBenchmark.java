@@ -0,0 +1,71 @@
+package enigma;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** JMH benchmarks for formatting long single-line messages into groups
+ *  of five, comparing Main.groupMessage with the string concatenation it
+ *  replaced.
+ *  @author Xuanyi Zhang
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GroupingBenchmark {
+
+    /** Number of characters in the message. */
+    @Param({"1000", "10000", "100000"})
+    public int length;
+
+    /** Generate a message of LENGTH letters with occasional spaces. */
+    @Setup
+    public void setUp() {
+        Random random = new Random(61);
+        StringBuilder msg = new StringBuilder();
+        for (int i = 0; i < length; i += 1) {
+            msg.append(random.nextInt(8) == 0
+                       ? ' ' : (char) ('A' + random.nextInt(26)));
+        }
+        _msg = msg.toString();
+        _out = new char[length + length / 5];
+    }
+
+    /** Group into a reusable buffer. */
+    @Benchmark
+    public int grouped() {
+        return Main.groupMessage(_msg, _out);
+    }
+
+    /** Group by repeated string concatenation, as printMessageLine used
+     *  to. */
+    @Benchmark
+    public String concatenated() {
+        String output = "";
+        int count = 0;
+        for (int i = 0; i < _msg.length(); i++) {
+            if (_msg.charAt(i) != ' ') {
+                output += _msg.charAt(i);
+                count += 1;
+            }
+            if (count == 5) {
+                output += " ";
+                count = 0;
+            }
+        }
+        return output;
+    }
+
+    /** The message being formatted. */
+    private String _msg;
+    /** Output buffer for grouped(). */
+    private char[] _out;
+}
@@ -0,0 +1,136 @@
+package enigma;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+
+/** A load generator for EncryptionServer on the loopback interface.
+ *  Usage:
+ *
+ *      java enigma.LoadGenerator PORT CONNECTIONS LINES LENGTH [SETTINGS]
+ *
+ *  opens CONNECTIONS connections to the server on PORT at once.  Each
+ *  sends the settings line SETTINGS (without its '*'; by default one for
+ *  the naval rotors) followed by LINES message lines of LENGTH
+ *  characters, and reads the replies.  All connections are driven from
+ *  one thread, so that tens of thousands of them can be open together.
+ *  Reports the elapsed time and the rates of lines and characters
+ *  converted.
+ *  @author Xuanyi Zhang
+ */
+public final class LoadGenerator {
+
+    /** Not instantiable. */
+    private LoadGenerator() {
+    }
+
+    /** Run the load described by ARGS (see the class comment). */
+    public static void main(String... args) throws IOException {
+        if (args.length < 4 || args.length > 5
+            || Integer.parseInt(args[2]) < 1) {
+            System.err.println("Usage: java enigma.LoadGenerator PORT "
+                               + "CONNECTIONS LINES LENGTH [SETTINGS]");
+            System.exit(1);
+        }
+        int port = Integer.parseInt(args[0]);
+        int connections = Integer.parseInt(args[1]);
+        int lines = Integer.parseInt(args[2]);
+        int length = Integer.parseInt(args[3]);
+        String settings = args.length > 4 ? args[4] : DEFAULT_SETTINGS;
+
+        StringBuilder request = new StringBuilder();
+        request.append("* ").append(settings).append('\n');
+        String line = BenchmarkData.message(length);
+        for (int i = 0; i < lines; i += 1) {
+            request.append(line).append('\n');
+        }
+        ByteBuffer bytes = ByteBuffer.wrap(
+            request.toString().getBytes(StandardCharsets.UTF_8));
+
+        long start = System.nanoTime();
+        Selector selector = Selector.open();
+        InetSocketAddress server =
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+        for (int i = 0; i < connections; i += 1) {
+            SocketChannel channel = SocketChannel.open(server);
+            channel.configureBlocking(false);
+            channel.register(selector, SelectionKey.OP_READ
+                             | SelectionKey.OP_WRITE,
+                             new Client(bytes.duplicate(), lines));
+        }
+        long connected = System.nanoTime();
+
+        int open = connections;
+        int failed = 0;
+        ByteBuffer reply = ByteBuffer.allocate(1 << 16);
+        while (open > 0) {
+            selector.select();
+            Iterator<SelectionKey> ready =
+                selector.selectedKeys().iterator();
+            while (ready.hasNext()) {
+                SelectionKey key = ready.next();
+                ready.remove();
+                Client client = (Client) key.attachment();
+                SocketChannel channel = (SocketChannel) key.channel();
+                if (key.isWritable()) {
+                    channel.write(client._request);
+                    if (!client._request.hasRemaining()) {
+                        key.interestOps(SelectionKey.OP_READ);
+                    }
+                }
+                if (key.isReadable()) {
+                    reply.clear();
+                    int n = channel.read(reply);
+                    for (int i = 0; i < n; i += 1) {
+                        if (reply.get(i) == '\n') {
+                            client._replies -= 1;
+                        }
+                    }
+                    if (n < 0 || client._replies == 0) {
+                        if (client._replies != 0) {
+                            failed += 1;
+                        }
+                        key.cancel();
+                        channel.close();
+                        open -= 1;
+                    }
+                }
+            }
+        }
+        long end = System.nanoTime();
+        selector.close();
+
+        double seconds = (end - start) * 1e-9;
+        long total = (long) (connections - failed) * lines;
+        System.out.printf("%d connections (%d failed) opened in %.1f ms%n",
+                          connections, failed, (connected - start) * 1e-6);
+        System.out.printf("%d lines in %.3f s: %.0f lines/s, "
+                          + "%.0f chars/s%n", total, seconds,
+                          total / seconds, total * length / seconds);
+    }
+
+    /** The state of one connection. */
+    private static final class Client {
+
+        /** A client sending REQUEST and expecting REPLIES lines back. */
+        Client(ByteBuffer request, int replies) {
+            _request = request;
+            _replies = replies;
+        }
+
+        /** The part of the request not yet sent. */
+        private final ByteBuffer _request;
+        /** Number of replies not yet received. */
+        private int _replies;
+    }
+
+    /** Settings for the naval rotors of the default configuration. */
+    private static final String DEFAULT_SETTINGS =
+        "B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)";
+}
@@ -0,0 +1,79 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** JMH benchmarks for Machine conversion at several message lengths and
+ *  numbers of rotors.
+ *  @author Xuanyi Zhang
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MachineBenchmark {
+
+    /** Number of rotor slots, including the reflector. */
+    @Param({"3", "5", "8"})
+    public int numRotors;
+
+    /** Number of characters in the message. */
+    @Param({"100", "10000", "1000000"})
+    public int length;
+
+    /** Build the machine and message. */
+    @Setup
+    public void setUp() {
+        _machine = BenchmarkData.machine(numRotors);
+        _msg = BenchmarkData.message(length);
+        _indices = new int[length];
+        for (int i = 0; i < length; i += 1) {
+            _indices[i] = (_msg.charAt(i) == ' ' ? 'A' : _msg.charAt(i)) - 'A';
+        }
+    }
+
+    /** Convert the message one index at a time. */
+    @Benchmark
+    public int convertInt() {
+        int acc = 0;
+        for (int c : _indices) {
+            acc += _machine.convert(c);
+        }
+        return acc;
+    }
+
+    /** Convert the message as a String, which converts long messages a
+     *  block at a time. */
+    @Benchmark
+    public String convertString() {
+        return _machine.convert(_msg);
+    }
+
+    /** Convert the message one character at a time, as convertString
+     *  does for short messages. */
+    @Benchmark
+    public String convertStringScalar() {
+        Alphabet alpha = _machine.alphabet();
+        char[] out = new char[_msg.length()];
+        for (int i = 0; i < out.length; i += 1) {
+            char ch = _msg.charAt(i);
+            out[i] = ch == ' '
+                ? ' ' : alpha.toChar(_machine.convert(alpha.toInt(ch)));
+        }
+        return new String(out);
+    }
+
+    /** The machine under test. */
+    private Machine _machine;
+    /** The message. */
+    private String _msg;
+    /** The message as alphabet indices, with spaces as 'A'. */
+    private int[] _indices;
+}
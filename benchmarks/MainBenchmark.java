@@ -0,0 +1,85 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/** JMH benchmarks for end-to-end processing of generated configuration
+ *  and message files by Main.
+ *  @author Xuanyi Zhang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MainBenchmark {
+
+    /** Number of characters on each message line. */
+    @Param({"80", "100000"})
+    public int lineLength;
+
+    /** Total number of message characters in the input file. */
+    @Param({"10000000"})
+    public int totalLength;
+
+    /** Write the configuration and input files. */
+    @Setup
+    public void setUp() throws IOException {
+        _dir = Files.createTempDirectory("enigma-bench");
+        _config = _dir.resolve("bench.conf");
+        _input = _dir.resolve("bench.in");
+        _output = _dir.resolve("bench.out");
+        Files.write(_config,
+                    BenchmarkData.config(5).getBytes(StandardCharsets.UTF_8));
+        String line = BenchmarkData.message(lineLength);
+        StringBuilder input = new StringBuilder();
+        input.append("* ").append(BenchmarkData.settings(5)).append('\n');
+        for (int n = 0; n < totalLength; n += lineLength) {
+            input.append(line).append('\n');
+        }
+        Files.write(_input,
+                    input.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Remove the generated files. */
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(_config);
+        Files.deleteIfExists(_input);
+        Files.deleteIfExists(_output);
+        Files.deleteIfExists(_dir);
+    }
+
+    /** Process the input file through the streaming path. */
+    @Benchmark
+    public void streamed() {
+        Main.main(_config.toString(), _input.toString(), _output.toString());
+    }
+
+    /** Process the input file through the memory-mapped path. */
+    @Benchmark
+    public void mapped() {
+        Main.main(Main.MAPPED_OPTION, _config.toString(), _input.toString(),
+                  _output.toString());
+    }
+
+    /** Directory holding the generated files. */
+    private Path _dir;
+    /** Generated configuration file. */
+    private Path _config;
+    /** Generated input file. */
+    private Path _input;
+    /** Output file. */
+    private Path _output;
+}
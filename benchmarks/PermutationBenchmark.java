@@ -0,0 +1,101 @@
+package enigma;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** JMH benchmarks for applying a Permutation and its inverse to every
+ *  character of its alphabet, and to a block of indices either at once
+ *  or one index at a time.
+ *  @author Xuanyi Zhang
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PermutationBenchmark {
+
+    /** Build a random permutation of the upper-case alphabet. */
+    @Setup
+    public void setUp() {
+        _perm = new Permutation(
+            BenchmarkData.randomCycles(BenchmarkData.UPPER, new Random(61)),
+            new Alphabet(BenchmarkData.UPPER));
+        _block = new int[Machine.BLOCK];
+        Random random = new Random(61);
+        for (int i = 0; i < _block.length; i += 1) {
+            _block[i] = random.nextInt(_perm.size());
+        }
+    }
+
+    /** Permute every index. */
+    @Benchmark
+    public int permuteInt() {
+        int acc = 0;
+        for (int p = 0; p < _perm.size(); p += 1) {
+            acc += _perm.permute(p);
+        }
+        return acc;
+    }
+
+    /** Invert every index. */
+    @Benchmark
+    public int invertInt() {
+        int acc = 0;
+        for (int p = 0; p < _perm.size(); p += 1) {
+            acc += _perm.invert(p);
+        }
+        return acc;
+    }
+
+    /** Permute every character. */
+    @Benchmark
+    public int permuteChar() {
+        int acc = 0;
+        for (int p = 0; p < BenchmarkData.UPPER.length(); p += 1) {
+            acc += _perm.permute(BenchmarkData.UPPER.charAt(p));
+        }
+        return acc;
+    }
+
+    /** Invert every character. */
+    @Benchmark
+    public int invertChar() {
+        int acc = 0;
+        for (int p = 0; p < BenchmarkData.UPPER.length(); p += 1) {
+            acc += _perm.invert(BenchmarkData.UPPER.charAt(p));
+        }
+        return acc;
+    }
+
+    /** Permute and then invert the block with the bulk methods. */
+    @Benchmark
+    public int[] permuteBlock() {
+        _perm.permute(_block, 0, _block.length);
+        _perm.invert(_block, 0, _block.length);
+        return _block;
+    }
+
+    /** Permute and then invert the block one index at a time. */
+    @Benchmark
+    public int[] permuteBlockScalar() {
+        for (int i = 0; i < _block.length; i += 1) {
+            _block[i] = _perm.permute(_block[i]);
+        }
+        for (int i = 0; i < _block.length; i += 1) {
+            _block[i] = _perm.invert(_block[i]);
+        }
+        return _block;
+    }
+
+    /** The permutation under test. */
+    private Permutation _perm;
+    /** A block of random indices. */
+    private int[] _block;
+}
@@ -0,0 +1,63 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** JMH benchmarks comparing a rotor that converts through precomputed
+ *  wiring tables with one that computes its contacts with modular
+ *  arithmetic.
+ *  @author Xuanyi Zhang
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RotorBenchmark {
+
+    /** Whether the rotor under test uses its compiled tables. */
+    @Param({"true", "false"})
+    public boolean compiled;
+
+    /** Build the rotor under test. */
+    @Setup
+    public void setUp() {
+        Alphabet alpha = new Alphabet();
+        _rotor = new MovingRotor("I", new Permutation(
+            "(AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)", alpha), "Q");
+        _rotor.setCompiled(compiled);
+        _rotor.rset('F');
+        _rotor.set('M');
+    }
+
+    /** Pass every contact forward and back through the rotor. */
+    @Benchmark
+    public int roundTrip() {
+        int acc = 0;
+        for (int p = 0; p < _rotor.size(); p += 1) {
+            acc += _rotor.convertBackward(_rotor.convertForward(p));
+        }
+        return acc;
+    }
+
+    /** Pass every contact forward through the rotor, advancing it after
+     *  each one as the fast rotor does. */
+    @Benchmark
+    public int forwardStepping() {
+        int acc = 0;
+        for (int p = 0; p < _rotor.size(); p += 1) {
+            _rotor.advance();
+            acc += _rotor.convertForward(p);
+        }
+        return acc;
+    }
+
+    /** The rotor under test. */
+    private Rotor _rotor;
+}